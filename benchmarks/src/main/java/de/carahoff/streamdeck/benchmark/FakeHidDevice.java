@@ -0,0 +1,75 @@
+package de.carahoff.streamdeck.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hid4java.HidDevice;
+import org.hid4java.jna.HidDeviceInfoStructure;
+
+/**
+ * HidDevice that accepts every write and never reports key presses, so benchmarks measure the library without USB.
+ * Writes copy the report like hid4java does, so the allocation of the real write path is part of the measurement.
+ */
+public class FakeHidDevice extends HidDevice {
+    private long bytesWritten;
+    private byte[] lastReport;
+
+    public FakeHidDevice() {
+        super(new HidDeviceInfoStructure(), null);
+    }
+
+    @Override
+    public boolean open() {
+        return true;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public int read(byte[] data, int timeoutMillis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(timeoutMillis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return 0;
+    }
+
+    @Override
+    public int write(byte[] message, int packetLength, byte reportId) {
+        // HidApi.write copies every report into a new buffer that starts with the report ID; keeping the last one
+        // lets the copy escape, as it does into native code
+        int length = Math.min(packetLength, message.length);
+        byte[] report = new byte[length + 1];
+        report[0] = reportId;
+        System.arraycopy(message, 0, report, 1, length);
+        lastReport = report;
+        bytesWritten += report.length;
+        return report.length;
+    }
+
+    @Override
+    public int getFeatureReport(byte[] data, byte reportId) {
+        return data.length + 1;
+    }
+
+    @Override
+    public int sendFeatureReport(byte[] data, byte reportId) {
+        return data.length + 1;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public byte[] getLastReport() {
+        return lastReport;
+    }
+}
@@ -0,0 +1,60 @@
+package de.carahoff.streamdeck.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.carahoff.streamdeck.util.ImageData;
+import de.carahoff.streamdeck.util.ImageUtils;
+
+/**
+ * Measures splitting an encoded key image into report pages, as done for every key write.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageDataBenchmark {
+    private static final int MK2_PAGE_SIZE = 1024;
+    private static final int MK2_HEADER_SIZE = 8;
+
+    @Param
+    private ImageType imageType;
+
+    private byte[] payload;
+    private ImageData imageData;
+    private byte[] report;
+
+    @Setup
+    public void setup() {
+        payload = ImageUtils.convertToJPGByteArray(ImageUtils.toBufferedImage(imageType.create(72)));
+        imageData = new ImageData(payload, MK2_PAGE_SIZE - MK2_HEADER_SIZE);
+        report = new byte[MK2_PAGE_SIZE];
+    }
+
+    @Benchmark
+    public ImageData create() {
+        return new ImageData(payload, MK2_PAGE_SIZE - MK2_HEADER_SIZE);
+    }
+
+    @Benchmark
+    public int copyPages() {
+        int copied = 0;
+        for (int page = 0; page < imageData.pageCount(); page++) {
+            copied += imageData.copyPage(page, report, MK2_HEADER_SIZE);
+        }
+        return copied;
+    }
+}
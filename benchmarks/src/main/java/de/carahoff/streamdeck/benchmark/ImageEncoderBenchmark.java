@@ -0,0 +1,56 @@
+package de.carahoff.streamdeck.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.carahoff.streamdeck.encoder.BaselineJpegEncoder;
+import de.carahoff.streamdeck.encoder.ChromaSubsampling;
+import de.carahoff.streamdeck.encoder.ImageIOJpegEncoder;
+import de.carahoff.streamdeck.util.ImageUtils;
+
+/**
+ * Compares the JPEG encoders on a key image at the same quality and subsampling.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageEncoderBenchmark {
+    @Param
+    private ChromaSubsampling subsampling;
+
+    private BufferedImage image;
+    private ImageIOJpegEncoder imageIOEncoder;
+    private BaselineJpegEncoder baselineEncoder;
+
+    @Setup
+    public void setup() {
+        image = ImageUtils.toBufferedImage(ImageType.BGR.create(72));
+        imageIOEncoder = new ImageIOJpegEncoder(ImageIOJpegEncoder.DEFAULT_QUALITY, subsampling);
+        baselineEncoder = new BaselineJpegEncoder(BaselineJpegEncoder.DEFAULT_QUALITY, subsampling);
+    }
+
+    @Benchmark
+    public byte[] imageIO() {
+        return imageIOEncoder.encode(image);
+    }
+
+    @Benchmark
+    public byte[] baseline() {
+        return baselineEncoder.encode(image);
+    }
+}
@@ -0,0 +1,45 @@
+package de.carahoff.streamdeck.benchmark;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import de.carahoff.streamdeck.util.ImageUtils;
+
+/**
+ * Kinds of key images the benchmarks are parameterised with. All images are filled with the same random noise, which
+ * is the worst case for JPEG encoding.
+ */
+public enum ImageType {
+    /** BufferedImage with alpha, e.g. a rendered icon */
+    ARGB,
+    /** BufferedImage in the layout the library converts to */
+    BGR,
+    /** Toolkit image from {@link Image#getScaledInstance}, which first has to be drawn into a BufferedImage */
+    SCALED;
+
+    public Image create(int size) {
+        switch (this) {
+        case ARGB:
+            return noise(size, BufferedImage.TYPE_INT_ARGB);
+        case BGR:
+            return noise(size, BufferedImage.TYPE_3BYTE_BGR);
+        default:
+            Image scaled = noise(size * 2, BufferedImage.TYPE_INT_ARGB).getScaledInstance(size, size, Image.SCALE_SMOOTH);
+            // Drawing the scaled instance once makes the toolkit produce its pixels before measurement starts
+            ImageUtils.toBufferedImage(scaled);
+            return scaled;
+        }
+    }
+
+    private static BufferedImage noise(int size, int type) {
+        BufferedImage image = new BufferedImage(size, size, type);
+        Random random = new Random(42);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                image.setRGB(x, y, random.nextInt() | 0xff000000);
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,62 @@
+package de.carahoff.streamdeck.benchmark;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.carahoff.streamdeck.util.ImageUtils;
+
+/**
+ * Measures the single steps of turning a key image into the MK2 payload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageUtilsBenchmark {
+    @Param
+    private ImageType imageType;
+
+    private Image image;
+    private BufferedImage flipped;
+
+    @Setup
+    public void setup() {
+        image = imageType.create(72);
+        flipped = ImageUtils.toBufferedImage(ImageUtils.flipHorizontallyAndVertically(image));
+    }
+
+    @Benchmark
+    public Image flipHorizontallyAndVertically() {
+        return ImageUtils.flipHorizontallyAndVertically(image);
+    }
+
+    @Benchmark
+    public BufferedImage toBufferedImage() {
+        return ImageUtils.toBufferedImage(image);
+    }
+
+    @Benchmark
+    public byte[] convertToJPGByteArray() {
+        return ImageUtils.convertToJPGByteArray(flipped);
+    }
+
+    @Benchmark
+    public long fingerprint() {
+        return ImageUtils.fingerprint(image);
+    }
+}
@@ -0,0 +1,80 @@
+package de.carahoff.streamdeck.benchmark;
+
+import java.awt.Image;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.carahoff.streamdeck.elgato.StreamDeckMK2;
+import de.carahoff.streamdeck.util.ImageDataCache;
+import de.carahoff.streamdeck.util.ImageUtils;
+import de.carahoff.streamdeck.util.PixelData;
+
+/**
+ * Measures a full setImage on an MK2. Run with {@code -prof gc} to see the allocation per call; with a cache hit
+ * only the fingerprint row buffer, the cache key and the copy hid4java makes of every report remain. The pixel
+ * benchmarks set the same image as raw ARGB pixels.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SetImageBenchmark {
+    @Param
+    private ImageType imageType;
+
+    private StreamDeckMK2 cachedDeck;
+    private StreamDeckMK2 uncachedDeck;
+    private Image image;
+    private PixelData pixels;
+
+    @Setup
+    public void setup() {
+        image = imageType.create(72);
+        pixels = PixelData.ofArgb(ImageUtils.toBufferedImage(image).getRGB(0, 0, 72, 72, null, 0, 72), 72, 72);
+
+        cachedDeck = new StreamDeckMK2(new FakeHidDevice());
+        cachedDeck.setImageCache(new ImageDataCache(16));
+        uncachedDeck = new StreamDeckMK2(new FakeHidDevice());
+        uncachedDeck.setImageCache(null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        cachedDeck.close();
+        uncachedDeck.close();
+    }
+
+    @Benchmark
+    public void setImageCached() {
+        cachedDeck.setImage(0, image);
+    }
+
+    @Benchmark
+    public void setImageUncached() {
+        uncachedDeck.setImage(0, image);
+    }
+
+    @Benchmark
+    public void setPixelsCached() {
+        cachedDeck.setImage(0, pixels);
+    }
+
+    @Benchmark
+    public void setPixelsUncached() {
+        uncachedDeck.setImage(0, pixels);
+    }
+}
@@ -0,0 +1,77 @@
+package de.carahoff.streamdeck.benchmark;
+
+import java.awt.Image;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.carahoff.streamdeck.elgato.StreamDeckMK2;
+import de.carahoff.streamdeck.simulation.SimulatedHidTransport;
+
+/**
+ * Measures how long it takes to update one key on every deck of a fleet of simulated MK2s, with each output report
+ * taking as long as a USB transfer. Shows whether the per-deck writers actually overlap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VirtualDecksBenchmark {
+    @Param({ "1", "100" })
+    private int deckCount;
+
+    @Param({ "0", "125" })
+    private int writeLatencyMicros;
+
+    private StreamDeckMK2[] decks;
+    private SimulatedHidTransport[] transports;
+    private Image[] images;
+    private int imageIndex;
+
+    @Setup
+    public void setup() {
+        decks = new StreamDeckMK2[deckCount];
+        transports = new SimulatedHidTransport[deckCount];
+        for (int i = 0; i < deckCount; i++) {
+            transports[i] = new SimulatedHidTransport("SIM" + i);
+            transports[i].setWriteLatency(Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(writeLatencyMicros)));
+            decks[i] = new StreamDeckMK2(transports[i]);
+        }
+        images = new Image[] { ImageType.BGR.create(72), ImageType.ARGB.create(72) };
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (int i = 0; i < deckCount; i++) {
+            decks[i].close();
+            if (transports[i].getRejectedReports() > 0 || transports[i].getOutOfOrderPages() > 0) {
+                throw new IllegalStateException("Simulated deck " + i + " received malformed reports");
+            }
+        }
+    }
+
+    @Benchmark
+    public void setImageOnAllDecks() {
+        Image image = images[imageIndex++ & 1];
+        CompletableFuture<?>[] writes = new CompletableFuture<?>[deckCount];
+        for (int i = 0; i < deckCount; i++) {
+            writes[i] = decks[i].setImageAsync(0, image);
+        }
+        CompletableFuture.allOf(writes).join();
+    }
+}
@@ -0,0 +1,68 @@
+package de.carahoff.streamdeck.device;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.carahoff.streamdeck.benchmark.FakeHidDevice;
+import de.carahoff.streamdeck.elgato.StreamDeckMK2;
+import de.carahoff.streamdeck.event.EventDispatcher;
+import de.carahoff.streamdeck.event.KeyEvent;
+import de.carahoff.streamdeck.event.KeyListener;
+
+/**
+ * Measures the event path of a key report: parsing the report into key states and dispatching the resulting event.
+ * Lives in the device package because {@link BasicHidStreamDeck#parseKeyStates} is package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyStatesBenchmark {
+    private BasicHidStreamDeck deck;
+    private byte[] report;
+    private EventDispatcher<KeyListener, KeyEvent> dispatcher;
+    private KeyEvent event;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        deck = new StreamDeckMK2(new FakeHidDevice());
+        report = new byte[512];
+        report[deck.getKeyStateOffset() + 3] = 1;
+        report[deck.getKeyStateOffset() + 14] = 1;
+
+        dispatcher = new EventDispatcher<>(KeyListener::onEvent);
+        dispatcher.setExecutor(Runnable::run);
+        dispatcher.addListener(blackhole::consume);
+        event = new KeyEvent(3, KeyEvent.Type.PRESSED);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dispatcher.close();
+        deck.close();
+    }
+
+    @Benchmark
+    public long parseKeyStates() {
+        return deck.parseKeyStates(report, deck.getKeyStateOffset() + deck.getKeys());
+    }
+
+    @Benchmark
+    public void dispatchKeyEvent() {
+        dispatcher.dispatch(event);
+    }
+}
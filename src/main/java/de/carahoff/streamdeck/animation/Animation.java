@@ -0,0 +1,189 @@
+package de.carahoff.streamdeck.animation;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+
+import de.carahoff.streamdeck.util.ImageUtils;
+
+/**
+ * Immutable sequence of frames for a single key, each shown for its own duration.
+ */
+public class Animation {
+    private static final long DEFAULT_GIF_FRAME_MS = 100;
+
+    private final List<Image> frames;
+    private final long[] frameEnds;
+    private final boolean loop;
+
+    public Animation(List<? extends Image> frames, Duration frameDuration, boolean loop) {
+        this(frames, Collections.nCopies(frames.size(), frameDuration), loop);
+    }
+
+    public Animation(List<? extends Image> frames, List<Duration> frameDurations, boolean loop) {
+        if (frames.isEmpty()) {
+            throw new IllegalArgumentException("Animation needs at least one frame");
+        }
+        if (frames.size() != frameDurations.size()) {
+            throw new IllegalArgumentException("Every frame needs a duration");
+        }
+        this.frames = Collections.unmodifiableList(new ArrayList<Image>(frames));
+        this.frameEnds = new long[frames.size()];
+        long end = 0;
+        for (int i = 0; i < frameEnds.length; i++) {
+            long millis = frameDurations.get(i).toMillis();
+            if (millis <= 0) {
+                throw new IllegalArgumentException("Frame durations must be positive");
+            }
+            end += millis;
+            frameEnds[i] = end;
+        }
+        this.loop = loop;
+    }
+
+    /**
+     * Decodes all frames of an animated GIF. Frames are composed onto the logical screen as the GIF's disposal
+     * methods require, so every frame is a complete image.
+     *
+     * @param inputStream
+     *            of the GIF
+     * @return looping Animation of the GIF frames
+     * @throws IOException
+     *             if the GIF cannot be read
+     */
+    public static Animation fromGif(InputStream inputStream) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("gif");
+        if (!readers.hasNext()) {
+            throw new IOException("No GIF reader available");
+        }
+        ImageReader reader = readers.next();
+        try (ImageInputStream stream = ImageIO.createImageInputStream(inputStream)) {
+            reader.setInput(stream, false);
+            int frameCount = reader.getNumImages(true);
+
+            BufferedImage canvas = null;
+            List<Image> frames = new ArrayList<>();
+            List<Duration> durations = new ArrayList<>();
+            for (int i = 0; i < frameCount; i++) {
+                BufferedImage frame = reader.read(i);
+                if (canvas == null) {
+                    canvas = createCanvas(reader.getStreamMetadata(), frame);
+                }
+                IIOMetadataNode metadata = (IIOMetadataNode) reader.getImageMetadata(i).getAsTree("javax_imageio_gif_image_1.0");
+                IIOMetadataNode descriptor = child(metadata, "ImageDescriptor");
+                IIOMetadataNode control = child(metadata, "GraphicControlExtension");
+                int left = descriptor == null ? 0 : Integer.parseInt(descriptor.getAttribute("imageLeftPosition"));
+                int top = descriptor == null ? 0 : Integer.parseInt(descriptor.getAttribute("imageTopPosition"));
+                String disposal = control == null ? "none" : control.getAttribute("disposalMethod");
+                long delay = control == null ? 0 : Long.parseLong(control.getAttribute("delayTime")) * 10;
+
+                BufferedImage previous = "restoreToPrevious".equals(disposal) ? copy(canvas, BufferedImage.TYPE_INT_ARGB) : null;
+                Graphics2D g2d = canvas.createGraphics();
+                g2d.drawImage(frame, left, top, null);
+                g2d.dispose();
+
+                frames.add(ImageUtils.toBufferedImage(canvas));
+                durations.add(Duration.ofMillis(delay > 0 ? delay : DEFAULT_GIF_FRAME_MS));
+
+                if ("restoreToBackgroundColor".equals(disposal)) {
+                    Graphics2D clear = canvas.createGraphics();
+                    clear.setComposite(AlphaComposite.Clear);
+                    clear.fillRect(left, top, frame.getWidth(), frame.getHeight());
+                    clear.dispose();
+                }
+                else if (previous != null) {
+                    canvas = previous;
+                }
+            }
+            if (frames.isEmpty()) {
+                throw new IOException("GIF contains no frames");
+            }
+            return new Animation(frames, durations, true);
+        }
+        finally {
+            reader.dispose();
+        }
+    }
+
+    public List<Image> getFrames() {
+        return frames;
+    }
+
+    public int getFrameCount() {
+        return frames.size();
+    }
+
+    public Duration getDuration() {
+        return Duration.ofMillis(frameEnds[frameEnds.length - 1]);
+    }
+
+    public boolean isLoop() {
+        return loop;
+    }
+
+    /**
+     * Returns the number of frames shown until the given time, counting frames of all completed loops. For animations
+     * that do not loop, the count stops at the last frame.
+     *
+     * @param elapsedMillis
+     *            since the animation started
+     * @return absolute frame number, the frame index is this number modulo {@link #getFrameCount()}
+     */
+    public long frameNumberAt(long elapsedMillis) {
+        long duration = frameEnds[frameEnds.length - 1];
+        if (elapsedMillis >= duration && !loop) {
+            return frameEnds.length - 1;
+        }
+        long cycles = elapsedMillis / duration;
+        long position = elapsedMillis % duration;
+        int index = 0;
+        while (frameEnds[index] <= position) {
+            index++;
+        }
+        return cycles * frameEnds.length + index;
+    }
+
+    private static BufferedImage createCanvas(IIOMetadata streamMetadata, BufferedImage firstFrame) {
+        int width = firstFrame.getWidth();
+        int height = firstFrame.getHeight();
+        if (streamMetadata != null) {
+            IIOMetadataNode screen = child((IIOMetadataNode) streamMetadata.getAsTree("javax_imageio_gif_stream_1.0"), "LogicalScreenDescriptor");
+            if (screen != null) {
+                width = Math.max(width, Integer.parseInt(screen.getAttribute("logicalScreenWidth")));
+                height = Math.max(height, Integer.parseInt(screen.getAttribute("logicalScreenHeight")));
+            }
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    private static BufferedImage copy(BufferedImage image, int type) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), type);
+        Graphics2D g2d = copy.createGraphics();
+        g2d.drawImage(image, 0, 0, null);
+        g2d.dispose();
+        return copy;
+    }
+
+    private static IIOMetadataNode child(IIOMetadataNode node, String name) {
+        for (int i = 0; i < node.getLength(); i++) {
+            if (name.equals(node.item(i).getNodeName())) {
+                return (IIOMetadataNode) node.item(i);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,237 @@
+package de.carahoff.streamdeck.animation;
+
+import java.awt.Image;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.carahoff.streamdeck.device.AwareStreamDeck;
+import de.carahoff.streamdeck.device.BasicHidStreamDeck;
+import de.carahoff.streamdeck.device.StreamDeck;
+import de.carahoff.streamdeck.util.Histogram;
+import de.carahoff.streamdeck.util.ImageData;
+import de.carahoff.streamdeck.util.ThreadSupport;
+
+/**
+ * Plays {@link Animation}s on the keys of one StreamDeck. A single fixed-rate tick collects the due frame of every
+ * animated key and sends them together. Frames are chosen by elapsed time, so when a flush takes longer than a tick
+ * the frames that were missed are skipped instead of delaying the animation.
+ * <p>
+ * On a {@link BasicHidStreamDeck}, or an {@link AwareStreamDeck} with one attached, all frames are prepared once per
+ * image format of the deck and reused for every loop, so frames are prepared again after the image encoder of the
+ * deck was changed. Other StreamDecks receive the frames through {@link StreamDeck#setImages(Map)}.
+ */
+public class Animator implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(Animator.class.getName());
+
+    private final StreamDeck deck;
+    private final ScheduledExecutorService scheduler;
+    private final Map<Integer, Playback> playbacks = new HashMap<>();
+    // Prepared frames by animation and image format key
+    private final Map<Animation, Map<String, ImageData[]>> preparedFrames = new WeakHashMap<>();
+    private final Histogram frameTimes = new Histogram();
+    private final AtomicLong skippedFrames = new AtomicLong();
+
+    public Animator(StreamDeck deck, Duration tickPeriod) {
+        if (tickPeriod.toMillis() <= 0) {
+            throw new IllegalArgumentException("Tick period must be at least one millisecond");
+        }
+        this.deck = deck;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(ThreadSupport.newThreadFactory("StreamDeck animator"));
+        this.scheduler.scheduleAtFixedRate(this::tick, 0, tickPeriod.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts playing the given animation on the key at the given keyIndex, replacing any animation already playing
+     * there.
+     *
+     * @param keyIndex
+     *            of key that is to be animated
+     * @param animation
+     *            that is to be played
+     */
+    public void play(int keyIndex, Animation animation) {
+        if (keyIndex >= deck.getKeys() || keyIndex < 0) {
+            throw new IllegalArgumentException("Key Index out of bounds");
+        }
+        BasicHidStreamDeck target = getPreparingDeck();
+        if (target != null) {
+            prepareFrames(animation, target, target.getImageFormatKey());
+        }
+        synchronized (playbacks) {
+            playbacks.put(keyIndex, new Playback(animation, System.nanoTime()));
+        }
+    }
+
+    /**
+     * Stops the animation of the key at the given keyIndex. The key keeps showing its current frame.
+     *
+     * @param keyIndex
+     *            of key whose animation is to be stopped
+     */
+    public void stop(int keyIndex) {
+        synchronized (playbacks) {
+            playbacks.remove(keyIndex);
+        }
+    }
+
+    public void stopAll() {
+        synchronized (playbacks) {
+            playbacks.clear();
+        }
+    }
+
+    public boolean isPlaying(int keyIndex) {
+        synchronized (playbacks) {
+            return playbacks.containsKey(keyIndex);
+        }
+    }
+
+    /**
+     * Returns the histogram of the time in nanoseconds each tick spent sending its frames.
+     *
+     * @return frame time histogram
+     */
+    public Histogram getFrameTimeHistogram() {
+        return frameTimes;
+    }
+
+    /**
+     * Returns the number of frames that were due but never sent, because a later frame was due by the time the key
+     * was updated again.
+     *
+     * @return number of skipped frames
+     */
+    public long getSkippedFrames() {
+        return skippedFrames.get();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        stopAll();
+    }
+
+    /**
+     * Returns the deck frames are prepared for: the deck itself or the deck attached to an AwareStreamDeck, if it is a
+     * BasicHidStreamDeck.
+     */
+    private BasicHidStreamDeck getPreparingDeck() {
+        if (deck instanceof BasicHidStreamDeck) {
+            return (BasicHidStreamDeck) deck;
+        }
+        if (deck instanceof AwareStreamDeck) {
+            StreamDeck attachedDeck = ((AwareStreamDeck) deck).getAttachedDeck();
+            if (attachedDeck instanceof BasicHidStreamDeck) {
+                return (BasicHidStreamDeck) attachedDeck;
+            }
+        }
+        return null;
+    }
+
+    private ImageData[] prepareFrames(Animation animation, BasicHidStreamDeck target, String format) {
+        synchronized (preparedFrames) {
+            Map<String, ImageData[]> framesByFormat = preparedFrames.get(animation);
+            if (framesByFormat == null) {
+                framesByFormat = new HashMap<>();
+                preparedFrames.put(animation, framesByFormat);
+            }
+            ImageData[] frames = framesByFormat.get(format);
+            if (frames == null) {
+                frames = new ImageData[animation.getFrameCount()];
+                for (int i = 0; i < frames.length; i++) {
+                    frames[i] = target.prepareImage(animation.getFrames().get(i));
+                }
+                framesByFormat.put(format, frames);
+            }
+            return frames;
+        }
+    }
+
+    private void tick() {
+        long start = System.nanoTime();
+        Map<Integer, Animation> dueAnimations = new HashMap<>();
+        Map<Integer, Integer> dueFrames = new HashMap<>();
+        synchronized (playbacks) {
+            Iterator<Map.Entry<Integer, Playback>> iterator = playbacks.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Integer, Playback> entry = iterator.next();
+                Playback playback = entry.getValue();
+                Animation animation = playback.animation;
+                long frameNumber = animation.frameNumberAt(TimeUnit.NANOSECONDS.toMillis(start - playback.startNanos));
+                if (frameNumber == playback.lastFrameNumber) {
+                    continue;
+                }
+                if (playback.lastFrameNumber >= 0 && frameNumber > playback.lastFrameNumber + 1) {
+                    skippedFrames.addAndGet(frameNumber - playback.lastFrameNumber - 1);
+                }
+                playback.lastFrameNumber = frameNumber;
+
+                int frameIndex = (int) (frameNumber % animation.getFrameCount());
+                dueAnimations.put(entry.getKey(), animation);
+                dueFrames.put(entry.getKey(), frameIndex);
+                if (!animation.isLoop() && frameIndex == animation.getFrameCount() - 1) {
+                    iterator.remove();
+                }
+            }
+        }
+        if (dueAnimations.isEmpty()) {
+            return;
+        }
+
+        try {
+            sendFrames(dueAnimations, dueFrames);
+        }
+        catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Unable to send animation frames", e);
+        }
+        frameTimes.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Sends the due frame of every key. Frames prepared for the current image format of the deck are sent as they
+     * are, the deck or the image encoder may have changed since the animation was started.
+     */
+    private void sendFrames(Map<Integer, Animation> dueAnimations, Map<Integer, Integer> dueFrames) {
+        BasicHidStreamDeck target = getPreparingDeck();
+        String format = target != null ? target.getImageFormatKey() : null;
+        Map<Integer, Image> dueImages = new HashMap<>();
+        Map<Integer, ImageData> dueImageData = new HashMap<>();
+        for (Map.Entry<Integer, Animation> entry : dueAnimations.entrySet()) {
+            int frameIndex = dueFrames.get(entry.getKey());
+            dueImages.put(entry.getKey(), entry.getValue().getFrames().get(frameIndex));
+            if (target != null) {
+                dueImageData.put(entry.getKey(), prepareFrames(entry.getValue(), target, format)[frameIndex]);
+            }
+        }
+
+        if (deck == target) {
+            target.setImageData(dueImageData);
+        }
+        else if (target != null) {
+            ((AwareStreamDeck) deck).setPreparedImages(dueImages, dueImageData, format);
+        }
+        else {
+            deck.setImages(dueImages);
+        }
+    }
+
+    private static class Playback {
+        private final Animation animation;
+        private final long startNanos;
+        private long lastFrameNumber = -1;
+
+        private Playback(Animation animation, long startNanos) {
+            this.animation = animation;
+            this.startNanos = startNanos;
+        }
+    }
+}
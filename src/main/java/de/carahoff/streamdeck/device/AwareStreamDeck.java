@@ -2,33 +2,50 @@ package de.carahoff.streamdeck.device;
 
 import java.awt.Image;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import org.hid4java.HidDevice;
+
+import de.carahoff.streamdeck.event.DeviceEvent;
+import de.carahoff.streamdeck.event.DeviceListener;
+import de.carahoff.streamdeck.event.EventDispatcher;
 import de.carahoff.streamdeck.event.KeyEvent;
 import de.carahoff.streamdeck.event.KeyListener;
+import de.carahoff.streamdeck.metrics.DeckMetrics;
+import de.carahoff.streamdeck.util.ImageData;
+import de.carahoff.streamdeck.util.ImageUtils;
+import de.carahoff.streamdeck.util.PixelData;
 
 public class AwareStreamDeck implements StreamDeck {
+    private static final Logger LOGGER = Logger.getLogger(AwareStreamDeck.class.getName());
 
-    private StreamDeck attachedDeck;
-    private Map<Integer, Image> keyImageMap;
+    private volatile StreamDeck attachedDeck;
+    private Map<Integer, KeyImage> keyImageMap;
+    // Serializes attaching and detaching. The lock on this deck only guards the sleep and fade state, so the timers
+    // on the DeckScheduler never wait for a deck to be replayed or closed
+    private final Object attachLock = new Object();
 
-    private final List<KeyListener> listeners = new CopyOnWriteArrayList<>();
-    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    private final EventDispatcher<KeyListener, KeyEvent> keyEventDispatcher = new EventDispatcher<>(KeyListener::onEvent);
+    private volatile DeckMetrics metrics = DeckMetrics.NONE;
+    private volatile String boundSerialNumber;
+    private final DeviceListener bindingListener = this::onDeviceEvent;
 
-    private static final long FADE_DELAY_MS = 1000 / 30;
     private int currentBrightness;
+    private FadeHandle activeFade;
 
     private boolean asleep;
     private boolean sleepAware;
-    private Timer timer;
+    private volatile ScheduledFuture<?> sleepCheck;
+    private volatile long lastActivityNanos;
     private Duration sleepTimeoutDuration = Duration.ofSeconds(120);
     private Duration sleepFadeDuration = Duration.ofSeconds(1);
     private int sleepBrightness = 10;
@@ -57,6 +74,7 @@ public class AwareStreamDeck implements StreamDeck {
 
     public AwareStreamDeck(StreamDeck streamDeck) {
         this.attachedDeck = streamDeck;
+        this.keyEventDispatcher.setLatencyRecorder(nanos -> metrics.keyEventDelivered(nanos));
         setBrightness(100);
         this.keyImageMap = new HashMap<>();
         for(int i =0; i< getKeys(); i++) {
@@ -66,12 +84,12 @@ public class AwareStreamDeck implements StreamDeck {
 
     @Override
     public void close() throws Exception {
+        unbind();
         synchronized (this) {
-            if (timer != null) {
-                timer.cancel();
-            }
+            cancelSleepCheck();
+            cancelFade();
         }
-        executorService.shutdown();
+        keyEventDispatcher.close();
         if (attachedDeck != null) {
             attachedDeck.close();
         }
@@ -108,40 +126,79 @@ public class AwareStreamDeck implements StreamDeck {
 
     @Override
     public void addKeyListener(KeyListener listener) {
-        synchronized (this.listeners) {
-            if (listeners.isEmpty() && attachedDeck != null) {
+        synchronized (this.keyEventDispatcher) {
+            if (!keyEventDispatcher.hasListeners() && attachedDeck != null) {
                 attachedDeck.addKeyListener(sleepAwareListener);
             }
-            this.listeners.add(listener);
+            this.keyEventDispatcher.addListener(listener);
         }
     }
 
     @Override
     public void removeKeyListener(KeyListener listener) {
-        synchronized (this.listeners) {
-            this.listeners.remove(listener);
-            if (listeners.isEmpty() && attachedDeck != null) {
+        synchronized (this.keyEventDispatcher) {
+            this.keyEventDispatcher.removeListener(listener);
+            if (!keyEventDispatcher.hasListeners() && attachedDeck != null) {
                 attachedDeck.removeKeyListener(sleepAwareListener);
             }
         }
     }
 
+    /**
+     * Returns the dispatcher that delivers key events to the listeners of this deck.
+     *
+     * @return key event dispatcher
+     */
+    public EventDispatcher<KeyListener, KeyEvent> getKeyEventDispatcher() {
+        return keyEventDispatcher;
+    }
+
+    public DeckMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics this deck records images skipped because their key already shows them, key event lag and
+     * attached and detached decks with. The attached deck records its own metrics.
+     *
+     * @param metrics
+     *            that are to be recorded, null records nothing
+     */
+    public void setMetrics(DeckMetrics metrics) {
+        this.metrics = metrics == null ? DeckMetrics.NONE : metrics;
+    }
+
     @Override
     public void clear(int keyIndex) {
-        if (attachedDeck != null) {
-            attachedDeck.clear(keyIndex);
+        synchronized (keyImageMap) {
+            if (keyImageMap.get(keyIndex) == KeyImage.BLANK) {
+                return;
+            }
+            if (attachedDeck != null) {
+                attachedDeck.clear(keyIndex);
+            }
+            keyImageMap.put(keyIndex, KeyImage.BLANK);
         }
-        keyImageMap.put(keyIndex, null);
     }
 
     @Override
     public void clear() {
-        if (attachedDeck != null) {
-            attachedDeck.clear();
-        }
-            for (int i = 0; i < getKeys(); i++) {
-                keyImageMap.put(i, null);
+        synchronized (keyImageMap) {
+            List<Integer> changedKeys = changedKeys(KeyImage.BLANK);
+            if (attachedDeck != null) {
+                if (changedKeys.size() == getKeys()) {
+                    attachedDeck.clear();
+                }
+                else {
+                    for (int keyIndex : changedKeys) {
+                        attachedDeck.clear(keyIndex);
+                    }
+                }
+            }
+            for (int keyIndex : changedKeys) {
+                keyImageMap.put(keyIndex, KeyImage.BLANK);
             }
+        }
     }
 
     @Override
@@ -150,25 +207,241 @@ public class AwareStreamDeck implements StreamDeck {
             throw new IllegalArgumentException("Key Index out of bounds");
         }
         wakeAndResetSleepCountdownt();
+        KeyImage keyImage = new KeyImage(img);
         synchronized (keyImageMap) {
-            if (attachedDeck != null) {
+            if (keyImage.sameAs(keyImageMap.get(keyIndex))) {
+                metrics.imageSkipped();
+                return;
+            }
+            if (attachedDeck instanceof BasicHidStreamDeck) {
+                BasicHidStreamDeck deck = (BasicHidStreamDeck) attachedDeck;
+                ImageData imageData = deck.prepareImage(img);
+                deck.setImageData(keyIndex, imageData);
+                keyImage.retain(deck, imageData);
+            }
+            else if (attachedDeck != null) {
                 attachedDeck.setImage(keyIndex, img);
             }
-            keyImageMap.put(keyIndex, img);
+            keyImageMap.put(keyIndex, keyImage);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A copy of the pixels is kept to set them again when a deck is attached. They are only converted to an image
+     * for an attached deck that does not take prepared images.
+     */
+    @Override
+    public void setImage(int keyIndex, PixelData pixels) {
+        if (keyIndex >= getKeys() || keyIndex < 0) {
+            throw new IllegalArgumentException("Key Index out of bounds");
+        }
+        wakeAndResetSleepCountdownt();
+        long fingerprint = ImageUtils.fingerprint(pixels);
+        synchronized (keyImageMap) {
+            KeyImage current = keyImageMap.get(keyIndex);
+            if (current != null && current != KeyImage.BLANK && !current.unsent && current.fingerprint == fingerprint) {
+                metrics.imageSkipped();
+                return;
+            }
+            KeyImage keyImage = new KeyImage(null, pixels.copy(), fingerprint);
+            if (attachedDeck instanceof BasicHidStreamDeck) {
+                BasicHidStreamDeck deck = (BasicHidStreamDeck) attachedDeck;
+                ImageData imageData = deck.prepareImage(pixels);
+                deck.setImageData(keyIndex, imageData);
+                keyImage.retain(deck, imageData);
+            }
+            else if (attachedDeck != null) {
+                attachedDeck.setImage(keyIndex, pixels);
+            }
+            keyImageMap.put(keyIndex, keyImage);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> setImageAsync(int keyIndex, Image img) {
+        if (keyIndex >= getKeys() || keyIndex < 0) {
+            throw new IllegalArgumentException("Key Index out of bounds");
+        }
+        wakeAndResetSleepCountdownt();
+        KeyImage keyImage = new KeyImage(img);
+        synchronized (keyImageMap) {
+            if (keyImage.sameAs(keyImageMap.get(keyIndex))) {
+                metrics.imageSkipped();
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> written;
+            if (attachedDeck instanceof BasicHidStreamDeck) {
+                BasicHidStreamDeck deck = (BasicHidStreamDeck) attachedDeck;
+                ImageData imageData = deck.prepareImage(img);
+                keyImage.retain(deck, imageData);
+                written = deck.setImageDataAsync(keyIndex, imageData);
+            }
+            else if (attachedDeck != null) {
+                written = attachedDeck.setImageAsync(keyIndex, img);
+            }
+            else {
+                written = CompletableFuture.completedFuture(null);
+            }
+            keyImageMap.put(keyIndex, keyImage);
+            // The returned future completes after the image was marked, so a retry is not skipped
+            return written.whenComplete((result, failure) -> {
+                if (failure != null) {
+                    unsent(keyIndex, keyImage);
+                }
+            });
+        }
+    }
+
+    /**
+     * Marks an image whose write failed, so setting the same image again sends it instead of skipping it. The image
+     * is kept to be sent again when a deck is attached.
+     */
+    private void unsent(int keyIndex, KeyImage keyImage) {
+        synchronized (keyImageMap) {
+            if (keyImageMap.get(keyIndex) == keyImage) {
+                keyImage.unsent = true;
+            }
         }
     }
 
     @Override
     public void setImage(Image img) {
         wakeAndResetSleepCountdownt();
+        KeyImage keyImage = new KeyImage(img);
         synchronized (keyImageMap) {
+            List<Integer> changedKeys = changedKeys(keyImage);
+            for (int i = changedKeys.size(); i < getKeys(); i++) {
+                metrics.imageSkipped();
+            }
             if (attachedDeck != null) {
-                attachedDeck.setImage(img);
+                if (changedKeys.size() == getKeys()) {
+                    attachedDeck.setImage(img);
+                }
+                else {
+                    for (int keyIndex : changedKeys) {
+                        attachedDeck.setImage(keyIndex, img);
+                    }
+                }
             }
-            for (int i = 0; i < getKeys(); i++) {
-                keyImageMap.put(i, img);
+            for (int keyIndex : changedKeys) {
+                keyImageMap.put(keyIndex, keyImage);
             }
+        }
     }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The sleep countdown is reset once for the whole batch, and only keys whose image changed are passed to the
+     * attached deck in one call.
+     */
+    @Override
+    public void setImages(Map<Integer, ? extends Image> images) {
+        for (int keyIndex : images.keySet()) {
+            if (keyIndex >= getKeys() || keyIndex < 0) {
+                throw new IllegalArgumentException("Key Index out of bounds");
+            }
+        }
+        wakeAndResetSleepCountdownt();
+        Map<Integer, KeyImage> keyImages = new LinkedHashMap<>();
+        for (Map.Entry<Integer, ? extends Image> entry : images.entrySet()) {
+            keyImages.put(entry.getKey(), new KeyImage(entry.getValue()));
+        }
+        synchronized (keyImageMap) {
+            Map<Integer, Image> changedImages = new LinkedHashMap<>();
+            for (Map.Entry<Integer, KeyImage> entry : keyImages.entrySet()) {
+                if (!entry.getValue().sameAs(keyImageMap.get(entry.getKey()))) {
+                    changedImages.put(entry.getKey(), entry.getValue().image);
+                }
+                else {
+                    metrics.imageSkipped();
+                }
+            }
+            if (changedImages.isEmpty()) {
+                return;
+            }
+            if (attachedDeck != null) {
+                attachedDeck.setImages(changedImages);
+            }
+            for (int keyIndex : changedImages.keySet()) {
+                keyImageMap.put(keyIndex, keyImages.get(keyIndex));
+            }
+        }
+    }
+
+    /**
+     * Sets the images of several keys like {@link #setImages(Map)}, together with device ready images that were
+     * prepared for the attached deck with {@link BasicHidStreamDeck#prepareImage(Image)}, e.g. the frames of an
+     * animation. The prepared images are written as they are if they were prepared for the format of the attached
+     * deck, otherwise the images are prepared again.
+     * 
+     * @param images
+     *            images by keyIndex
+     * @param imageData
+     *            prepared images by keyIndex
+     * @param imageFormatKey
+     *            format the images were prepared for, see {@link BasicHidStreamDeck#getImageFormatKey()}
+     */
+    public void setPreparedImages(Map<Integer, ? extends Image> images, Map<Integer, ImageData> imageData, String imageFormatKey) {
+        for (int keyIndex : images.keySet()) {
+            if (keyIndex >= getKeys() || keyIndex < 0) {
+                throw new IllegalArgumentException("Key Index out of bounds");
+            }
+        }
+        wakeAndResetSleepCountdownt();
+        Map<Integer, KeyImage> keyImages = new LinkedHashMap<>();
+        for (Map.Entry<Integer, ? extends Image> entry : images.entrySet()) {
+            keyImages.put(entry.getKey(), new KeyImage(entry.getValue()));
+        }
+        synchronized (keyImageMap) {
+            Map<Integer, Image> changedImages = new LinkedHashMap<>();
+            for (Map.Entry<Integer, KeyImage> entry : keyImages.entrySet()) {
+                if (!entry.getValue().sameAs(keyImageMap.get(entry.getKey()))) {
+                    changedImages.put(entry.getKey(), entry.getValue().image);
+                }
+                else {
+                    metrics.imageSkipped();
+                }
+            }
+            if (changedImages.isEmpty()) {
+                return;
+            }
+            if (attachedDeck instanceof BasicHidStreamDeck) {
+                BasicHidStreamDeck deck = (BasicHidStreamDeck) attachedDeck;
+                boolean samePrepared = deck.getImageFormatKey().equals(imageFormatKey);
+                Map<Integer, ImageData> payloads = new LinkedHashMap<>();
+                for (Map.Entry<Integer, Image> entry : changedImages.entrySet()) {
+                    ImageData payload = samePrepared ? imageData.get(entry.getKey()) : null;
+                    if (payload == null) {
+                        payload = deck.prepareImage(entry.getValue());
+                    }
+                    keyImages.get(entry.getKey()).retain(deck, payload);
+                    payloads.put(entry.getKey(), payload);
+                }
+                deck.setImageData(payloads);
+            }
+            else if (attachedDeck != null) {
+                attachedDeck.setImages(changedImages);
+            }
+            for (int keyIndex : changedImages.keySet()) {
+                keyImageMap.put(keyIndex, keyImages.get(keyIndex));
+            }
+        }
+    }
+
+    /**
+     * Returns the keys that do not already show the given image. Callers must hold the lock on keyImageMap.
+     */
+    private List<Integer> changedKeys(KeyImage keyImage) {
+        List<Integer> changedKeys = new ArrayList<>();
+        for (int i = 0; i < getKeys(); i++) {
+            if (!keyImage.sameAs(keyImageMap.get(i))) {
+                changedKeys.add(i);
+            }
+        }
+        return changedKeys;
     }
 
     @Override
@@ -181,6 +454,7 @@ public class AwareStreamDeck implements StreamDeck {
             percentBrightness = 0;
         }
         synchronized (this) {
+            cancelFade();
         if (attachedDeck != null) {
             attachedDeck.setBrightness(percentBrightness);
         }
@@ -188,6 +462,25 @@ public class AwareStreamDeck implements StreamDeck {
     }
     }
 
+    @Override
+    public CompletableFuture<Void> setBrightnessAsync(int percentBrightness) {
+        wakeAndResetSleepCountdownt();
+        if (percentBrightness > 100) {
+            percentBrightness = 100;
+        }
+        if (percentBrightness < 0) {
+            percentBrightness = 0;
+        }
+        synchronized (this) {
+            cancelFade();
+            currentBrightness = percentBrightness;
+            if (attachedDeck != null) {
+                return attachedDeck.setBrightnessAsync(percentBrightness);
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
     private void setSleepBrightness(int percentBrightness) {
         if (percentBrightness > 100) {
             percentBrightness = 100;
@@ -196,6 +489,7 @@ public class AwareStreamDeck implements StreamDeck {
             percentBrightness = 0;
         }
         synchronized (this) {
+            cancelFade();
             if (attachedDeck != null) {
                 attachedDeck.setBrightness(percentBrightness);
             }
@@ -215,9 +509,7 @@ public class AwareStreamDeck implements StreamDeck {
                 setSleepCountdown();
             }
             else {
-                if (timer != null) {
-                    timer.cancel();
-                }
+                cancelSleepCheck();
                 asleep = false;
             }
             this.sleepAware = sleepAware;
@@ -228,20 +520,48 @@ public class AwareStreamDeck implements StreamDeck {
         synchronized (this) {
             asleep = true;
             beforeSleepBrightness = currentBrightness;
-            if (timer != null) {
-                timer.cancel();
-            }
+            cancelSleepCheck();
             fade(sleepBrightness, sleepFadeDuration);
         }
     }
 
+    /**
+     * Restarts the sleep countdown. This only records the time of the activity, the pending sleep check reschedules
+     * itself when it finds that the deck was active in the meantime.
+     */
     private void setSleepCountdown() {
+        lastActivityNanos = System.nanoTime();
+        if (sleepCheck != null) {
+            return;
+        }
+        synchronized (this) {
+            if (sleepCheck == null) {
+                sleepCheck = DeckScheduler.schedule(this::checkSleep, sleepTimeoutDuration.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private void checkSleep() {
+        synchronized (this) {
+            sleepCheck = null;
+            if (!sleepAware || asleep) {
+                return;
+            }
+            long remaining = sleepTimeoutDuration.toNanos() - (System.nanoTime() - lastActivityNanos);
+            if (remaining > 0) {
+                sleepCheck = DeckScheduler.schedule(this::checkSleep, remaining, TimeUnit.NANOSECONDS);
+                return;
+            }
+            sleep();
+        }
+    }
+
+    private void cancelSleepCheck() {
         synchronized (this) {
-            if (timer != null) {
-                timer.cancel();
+            if (sleepCheck != null) {
+                sleepCheck.cancel(false);
+                sleepCheck = null;
             }
-            timer = new Timer();
-            timer.schedule(new SleepTask(), sleepTimeoutDuration.toMillis());
         }
     }
 
@@ -250,6 +570,8 @@ public class AwareStreamDeck implements StreamDeck {
         synchronized (this) {
         this.sleepTimeoutDuration = duration;
             if (isSleepAware() && !asleep()) {
+                // A pending check may be scheduled for the old timeout
+                cancelSleepCheck();
                 setSleepCountdown();
             }
         }
@@ -278,35 +600,58 @@ public class AwareStreamDeck implements StreamDeck {
         }
     }
 
-    public void fade(int percentEndBrightness, Duration duration) {
+    /**
+     * Fades the brightness to the given value over the given duration without blocking. The fade runs in scheduled
+     * steps that queue the brightness on the attached deck. If a fade is already running, it is retargeted from its
+     * current brightness.
+     * 
+     * @param percentEndBrightness
+     *            target brightness in percent
+     * @param duration
+     *            of the fade
+     * @return handle to cancel or retarget the fade
+     */
+    public FadeHandle fade(int percentEndBrightness, Duration duration) {
         if (percentEndBrightness > 100) {
             percentEndBrightness = 100;
         }
         if (percentEndBrightness < 0) {
             percentEndBrightness = 0;
         }
-        if (percentEndBrightness == currentBrightness) {
-            return;
-        }
-        double step = (double) (percentEndBrightness - currentBrightness) / duration.toMillis() * FADE_DELAY_MS;
-        if (Double.isInfinite(step)) {
-            return;
-        }
-        for (double current = currentBrightness;; current += step) {
-            if (!((currentBrightness < percentEndBrightness && current < percentEndBrightness) || (currentBrightness > percentEndBrightness && current > percentEndBrightness))) {
-                break;
+        synchronized (this) {
+            if (activeFade != null && activeFade.retarget(percentEndBrightness, duration)) {
+                return activeFade;
             }
-            if (asleep()) {
-                setSleepBrightness((int) current);
+            if (percentEndBrightness == currentBrightness) {
+                return FadeHandle.completed(currentBrightness);
             }
-            else {
-                setBrightness((int) current);
+            activeFade = new FadeHandle(currentBrightness, percentEndBrightness, duration, this::setFadeBrightness);
+            activeFade.start();
+            return activeFade;
+        }
+    }
+
+    private void setFadeBrightness(FadeHandle fade, int percentBrightness) {
+        synchronized (this) {
+            // Steps of a fade that was cancelled or replaced in the meantime must not overwrite the brightness
+            if (fade != activeFade) {
+                return;
             }
-            try {
-                TimeUnit.MILLISECONDS.sleep(FADE_DELAY_MS);
+            if (!asleep && sleepAware) {
+                setSleepCountdown();
             }
-            catch (InterruptedException e) {
-                e.printStackTrace();
+            currentBrightness = percentBrightness;
+            if (attachedDeck != null) {
+                attachedDeck.setBrightnessAsync(percentBrightness);
+            }
+        }
+    }
+
+    private void cancelFade() {
+        synchronized (this) {
+            if (activeFade != null) {
+                activeFade.cancel();
+                activeFade = null;
             }
         }
     }
@@ -328,21 +673,72 @@ public class AwareStreamDeck implements StreamDeck {
         }
     }
 
-    private class SleepTask extends TimerTask {
-        @Override
-        public void run() {
-            sleep();
+    /**
+     * Image or pixels of a key together with their fingerprint. A null KeyImage means the content of the key is
+     * unknown, {@link #BLANK} that the key was cleared.
+     */
+    private static final class KeyImage {
+        private static final KeyImage BLANK = new KeyImage(null, null, 0);
+
+        private final Image image;
+        // Copy of the pixels set without an image
+        private final PixelData pixels;
+        private final long fingerprint;
+        // Device ready image for the deck format it was prepared for, guarded by the lock on keyImageMap
+        private String preparedFormat;
+        private ImageData prepared;
+        // Set when the image could not be written, guarded by the lock on keyImageMap
+        private boolean unsent;
+
+        private KeyImage(Image image) {
+            this(image, null, ImageUtils.fingerprint(image));
+        }
+
+        private KeyImage(Image image, PixelData pixels, long fingerprint) {
+            this.image = image;
+            this.pixels = pixels;
+            this.fingerprint = fingerprint;
+        }
+
+        private boolean isBlank() {
+            return image == null && pixels == null;
+        }
+
+        /**
+         * Returns the image, converting pixels that were set without one.
+         */
+        private Image image() {
+            return image != null || pixels == null ? image : ImageUtils.toBufferedImage(pixels);
+        }
+
+        private void retain(BasicHidStreamDeck deck, ImageData imageData) {
+            if (this != BLANK) {
+                this.preparedFormat = deck.getImageFormatKey();
+                this.prepared = imageData;
+            }
+        }
+
+        private ImageData preparedFor(BasicHidStreamDeck deck) {
+            return prepared != null && deck.getImageFormatKey().equals(preparedFormat) ? prepared : null;
+        }
+
+        private boolean sameAs(KeyImage other) {
+            if (other == null || other == BLANK || this == BLANK) {
+                return this == other;
+            }
+            if (other.unsent) {
+                return false;
+            }
+            return fingerprint == other.fingerprint;
         }
     }
 
     private void emitKeyEvent(KeyEvent event) {
-        for (KeyListener listener : listeners) {
-            executorService.submit(() -> listener.onEvent(event));
-        }
+        keyEventDispatcher.dispatch(event);
     }
 
     public void attachDeck(StreamDeck streamDeck) {
-        synchronized (this) {
+        synchronized (attachLock) {
             if (attachedDeck != null) {
                 try {
                     attachedDeck.close();
@@ -355,13 +751,15 @@ public class AwareStreamDeck implements StreamDeck {
             if (streamDeck.getKeys() != getKeys()) {
                 throw new IllegalArgumentException(String.format("Supplied Deck has different amount of Keys, expected %d Keys", getKeys()));
             }
-            for (int i = 0; i < getKeys(); i++) {
-                if (keyImageMap.get(i) == null) {
-                    streamDeck.clear(i);
+            // A newly attached device has lost its key images, so all keys are sent again
+            synchronized (keyImageMap) {
+                if (streamDeck instanceof BasicHidStreamDeck) {
+                    replay((BasicHidStreamDeck) streamDeck);
                 }
                 else {
-                    streamDeck.setImage(i, keyImageMap.get(i));
+                    resend(streamDeck);
                 }
+                this.attachedDeck = streamDeck;
             }
 
             streamDeck.addKeyListener(sleepAwareListener);
@@ -369,29 +767,96 @@ public class AwareStreamDeck implements StreamDeck {
                 wakeAndResetSleepCountdownt();//Set new timer if deck is sleepaware
             }
             else {
-                streamDeck.setBrightness(currentBrightness);
+                int brightness;
+                synchronized (this) {
+                    brightness = currentBrightness;
+                }
+                streamDeck.setBrightness(brightness);
             }
-            this.attachedDeck = streamDeck;
+            metrics.deviceEvent(DeviceEvent.Type.ATTACHED);
             //TODO CH: Catch mismatch in pixel size, don't attach when mismatching?-> Problem pixel size not mandatory for StreamDeck (Multiple Key sizes for newer Decks)
         }
     }
 
+    /**
+     * Writes all keys to the deck in one burst. Keys whose device ready image was retained for the format of the deck
+     * are sent as they are, only the others are prepared, in parallel, and retained for the next attachment. Callers
+     * must hold the lock on keyImageMap.
+     */
+    private void replay(BasicHidStreamDeck deck) {
+        Map<Integer, Image> missing = new LinkedHashMap<>();
+        Map<Integer, ImageData> prepared = new HashMap<>();
+        for (int i = 0; i < getKeys(); i++) {
+            KeyImage keyImage = keyImageMap.get(i);
+            if (keyImage == null || keyImage.isBlank() || keyImage.preparedFor(deck) != null) {
+                continue;
+            }
+            if (keyImage.image != null) {
+                missing.put(i, keyImage.image);
+            }
+            else {
+                prepared.put(i, deck.prepareImage(keyImage.pixels));
+            }
+        }
+        prepared.putAll(deck.prepareImages(missing));
+
+        Map<Integer, ImageData> payloads = new LinkedHashMap<>();
+        for (int i = 0; i < getKeys(); i++) {
+            KeyImage keyImage = keyImageMap.get(i);
+            if (keyImage == null || keyImage.isBlank()) {
+                keyImageMap.put(i, KeyImage.BLANK);
+                payloads.put(i, deck.getBlankImageData());
+                continue;
+            }
+            ImageData imageData = prepared.get(i);
+            if (imageData != null) {
+                keyImage.retain(deck, imageData);
+            }
+            else {
+                imageData = keyImage.preparedFor(deck);
+            }
+            payloads.put(i, imageData);
+        }
+        deck.setImageData(payloads);
+    }
+
+    /**
+     * Sends all keys to a deck that does not take prepared images. Blank keys are cleared right away, images are
+     * queued on the deck's writer so attaching does not wait for the transfer. Callers must hold the lock on
+     * keyImageMap.
+     */
+    private void resend(StreamDeck streamDeck) {
+        for (int i = 0; i < getKeys(); i++) {
+            KeyImage keyImage = keyImageMap.get(i);
+            if (keyImage == null || keyImage.isBlank()) {
+                streamDeck.clear(i);
+                keyImageMap.put(i, KeyImage.BLANK);
+            }
+        }
+        for (int i = 0; i < getKeys(); i++) {
+            KeyImage keyImage = keyImageMap.get(i);
+            if (!keyImage.isBlank()) {
+                streamDeck.setImageAsync(i, keyImage.image());
+            }
+        }
+    }
+
     public void detachDeck() {
-        synchronized (this) {
-            if (attachedDeck != null) {
+        synchronized (attachLock) {
+            StreamDeck detachedDeck = attachedDeck;
+            attachedDeck = null;
+            if (detachedDeck != null) {
                 try {
-                    attachedDeck.close();
+                    detachedDeck.close();
                 }
                 catch (Exception e) {
                     System.out.println("Unable to call close on detached deck");
                 }
+                metrics.deviceEvent(DeviceEvent.Type.DETACHED);
             }
-            attachedDeck = null;
-            if (sleepAware) { //SleepAwareneness is kept on detachment but timer is canceled until reatachment
+            if (isSleepAware()) { //SleepAwareneness is kept on detachment but timer is canceled until reatachment
                 synchronized (this) {
-                    if (timer != null) {
-                        timer.cancel();
-                    }
+                    cancelSleepCheck();
                     if (!asleep()) {
                         sleep();
                     }
@@ -413,4 +878,79 @@ public class AwareStreamDeck implements StreamDeck {
         return attachedDeck;
     }
 
+    /**
+     * Binds this deck to the StreamDeck with the given serial number. Whenever that device is attached, it is created
+     * with its factory from {@link HidStreamDecks} and attached, and detached again when it is unplugged, so the
+     * application does not have to handle device events. If the device is already attached and no deck is, it is
+     * attached right away.
+     *
+     * @param serialNumber
+     *            of the StreamDeck this deck is bound to
+     */
+    public void bindTo(String serialNumber) {
+        if (serialNumber == null) {
+            throw new IllegalArgumentException("Serial number must not be null");
+        }
+        boundSerialNumber = serialNumber;
+        HidStreamDecks.addDeviceListener(bindingListener);
+        synchronized (attachLock) {
+            if (attachedDeck != null) {
+                return;
+            }
+            for (HidStreamDeckInfo info : HidStreamDecks.identify()) {
+                if (serialNumber.equals(info.getDevice().getSerialNumber())) {
+                    attachBound(info);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops attaching and detaching the bound StreamDeck automatically. A deck that is attached stays attached.
+     */
+    public void unbind() {
+        if (boundSerialNumber != null) {
+            boundSerialNumber = null;
+            HidStreamDecks.removeDeviceListener(bindingListener);
+        }
+    }
+
+    /**
+     * Returns the serial number this deck is bound to.
+     *
+     * @return serial number or null if this deck is not bound
+     */
+    public String getBoundSerialNumber() {
+        return boundSerialNumber;
+    }
+
+    private void onDeviceEvent(DeviceEvent event) {
+        String serialNumber = boundSerialNumber;
+        HidDevice device = event.getHidDevice();
+        if (serialNumber == null || device == null || !serialNumber.equals(device.getSerialNumber())) {
+            return;
+        }
+        synchronized (attachLock) {
+            if (event.getType() == DeviceEvent.Type.ATTACHED && attachedDeck == null) {
+                HidStreamDeckInfo info = HidStreamDecks.identifyDevice(device);
+                if (info != null) {
+                    attachBound(info);
+                }
+            }
+            else if (event.getType() == DeviceEvent.Type.DETACHED && attachedDeck != null) {
+                detachDeck();
+            }
+        }
+    }
+
+    private void attachBound(HidStreamDeckInfo info) {
+        try {
+            attachDeck(info.createStreamDeck());
+        }
+        catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Unable to attach StreamDeck " + boundSerialNumber, e);
+        }
+    }
+
 }
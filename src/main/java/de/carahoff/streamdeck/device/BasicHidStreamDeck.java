@@ -1,37 +1,98 @@
 package de.carahoff.streamdeck.device;
 
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.imageio.ImageIO;
+
 import org.hid4java.HidDevice;
 
+import de.carahoff.streamdeck.encoder.ImageEncoder;
+import de.carahoff.streamdeck.encoder.ImageFormat;
+import de.carahoff.streamdeck.encoder.ImageIOJpegEncoder;
+import de.carahoff.streamdeck.event.EventDispatcher;
 import de.carahoff.streamdeck.event.KeyEvent;
 import de.carahoff.streamdeck.event.KeyListener;
 import de.carahoff.streamdeck.event.KeyEvent.Type;
+import de.carahoff.streamdeck.metrics.DeckMetrics;
+import de.carahoff.streamdeck.metrics.DeckStatistics;
 import de.carahoff.streamdeck.util.ImageData;
+import de.carahoff.streamdeck.util.ImageDataCache;
+import de.carahoff.streamdeck.util.ImageUtils;
+import de.carahoff.streamdeck.util.PixelData;
+import de.carahoff.streamdeck.util.ThreadSupport;
 
 public abstract class BasicHidStreamDeck implements StreamDeck {
-    private final HidDevice device;
-    private final List<KeyListener> listeners = new CopyOnWriteArrayList<>();
-    private final ExecutorService executorService = Executors.newCachedThreadPool();
-    private Thread keyController;
+    private static volatile ImageDataCache defaultImageCache = new ImageDataCache(256);
+    private static final int DEFAULT_KEY_READ_TIMEOUT_MS = 250;
+    private static volatile boolean defaultStatisticsEnabled;
 
+    private final HidTransport transport;
+    private final EventDispatcher<KeyListener, KeyEvent> keyEventDispatcher = new EventDispatcher<>(KeyListener::onEvent);
+    private Thread keyController;
+    private volatile int keyReadTimeoutMs = DEFAULT_KEY_READ_TIMEOUT_MS;
+    private volatile ImageDataCache imageCache = defaultImageCache;
+    private volatile ImageEncoder imageEncoder;
+    private volatile ImageData blankImageData;
+    private final byte[] imagePageHeader;
+    private final byte[] imagePageReport;
+    private final Map<Integer, PendingImage> pendingImages = new LinkedHashMap<>();
+    private final AtomicIntegerArray imageSequences;
+    private PendingBrightness pendingBrightness;
+    private final AtomicInteger brightnessSequence = new AtomicInteger();
+    private final Object brightnessLock = new Object();
+    // Guards pendingImages and pendingBrightness. A lock instead of a monitor, so a virtual writer thread waiting
+    // for updates does not pin its carrier thread
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final Condition queueChanged = queueLock.newCondition();
+    private Thread deviceWriter;
+    private boolean closed;
+    private final ReentrantLock scratchLock = new ReentrantLock();
+    private BufferedImage scratchImage;
+    private volatile DeckMetrics metrics = DeckMetrics.NONE;
+    private DeckStatistics statistics;
 
 
     public BasicHidStreamDeck(HidDevice device) {
-        if (!device.isOpen()) {
-            device.open();
+        this(new HidDeviceTransport(device));
+    }
+
+    public BasicHidStreamDeck(HidTransport transport) {
+        if (!transport.isOpen()) {
+            transport.open();
         }
 
-        this.device = device;
-        this.keyController = new Thread(new KeyController());
+        this.transport = transport;
+        this.imageEncoder = getDefaultImageEncoder();
+        this.imagePageHeader = new byte[getImagePageHeaderSize()];
+        this.imagePageReport = new byte[getImagePageSize() - 1];
+        this.imageSequences = new AtomicIntegerArray(getKeys());
+        this.keyEventDispatcher.setLatencyRecorder(nanos -> metrics.keyEventDelivered(nanos));
+        if (defaultStatisticsEnabled) {
+            enableStatistics();
+        }
+        // Always a platform thread, a blocking native read would pin the carrier of a virtual thread
+        this.keyController = new Thread(new KeyController(), "StreamDeck key reader");
         this.keyController.start();
         setBrightness(100);
     }
@@ -42,9 +103,9 @@ public abstract class BasicHidStreamDeck implements StreamDeck {
 
     public abstract int getPixels();
 
-    protected abstract int getDPI();
+    public abstract int getDPI();
 
-    protected abstract int getPadding();
+    public abstract int getPadding();
 
     protected abstract int getImagePageSize();
 
@@ -66,12 +127,121 @@ public abstract class BasicHidStreamDeck implements StreamDeck {
 
     protected abstract byte[] imagePageHeader(int pageIndex, int keyIndex, int payloadLength, boolean lastPage);
 
+    /**
+     * Writes the header of an image page, starting with the report ID, into the given array of
+     * {@link #getImagePageHeaderSize()} bytes. Image pages are written with this method; by default it copies the
+     * header returned by {@link #imagePageHeader(int, int, int, boolean)}. Decks override it to fill the array
+     * without allocating a header per page.
+     */
+    protected void imagePageHeader(byte[] header, int pageIndex, int keyIndex, int payloadLength, boolean lastPage) {
+        byte[] pageHeader = imagePageHeader(pageIndex, keyIndex, payloadLength, lastPage);
+        System.arraycopy(pageHeader, 0, header, 0, Math.min(pageHeader.length, header.length));
+    }
+
     protected abstract int translateKeyIndex(int index, int columns);
 
     protected abstract Image flipImage(Image img);
 
     protected abstract byte[] toImageFormat(Image img);
 
+    /**
+     * Turns an image of the right dimensions into the bytes the device expects for a key. By default the image is
+     * flipped with {@link #flipImage(Image)} and encoded with {@link #toImageFormat(Image)}; decks whose flip is a
+     * 180 degree rotation can use {@link #rotateAndEncode(Image)} instead.
+     * 
+     * @param img
+     *            that is to be converted
+     * @return image bytes in device format
+     */
+    protected byte[] toDeviceFormat(Image img) {
+        return toImageFormat(flipImage(img));
+    }
+
+    /**
+     * Turns raw pixels of the right dimensions into the bytes the device expects for a key. By default the pixels are
+     * copied into a BufferedImage and converted with {@link #toDeviceFormat(Image)}; decks whose flip is a 180 degree
+     * rotation can use {@link #rotateAndEncode(PixelData)} instead.
+     * 
+     * @param pixels
+     *            that are to be converted
+     * @return image bytes in device format
+     */
+    protected byte[] toDeviceFormat(PixelData pixels) {
+        return toDeviceFormat(ImageUtils.toBufferedImage(pixels));
+    }
+
+    /**
+     * Rotates the image by 180 degrees into a scratch image of this deck and encodes that with
+     * {@link #toImageFormat(Image)}. If another thread is using the scratch image, a new one is created.
+     * 
+     * @param img
+     *            that is to be converted
+     * @return image bytes in device format
+     */
+    protected final byte[] rotateAndEncode(Image img) {
+        if (!scratchLock.tryLock()) {
+            return toImageFormat(ImageUtils.rotate180(img, null));
+        }
+        try {
+            scratchImage = ImageUtils.rotate180(img, scratchImage);
+            return toImageFormat(scratchImage);
+        }
+        finally {
+            scratchLock.unlock();
+        }
+    }
+
+    /**
+     * Rotates the pixels by 180 degrees into the scratch image of this deck and encodes that with
+     * {@link #toImageFormat(Image)}, like {@link #rotateAndEncode(Image)} does for images.
+     * 
+     * @param pixels
+     *            that are to be converted
+     * @return image bytes in device format
+     */
+    protected final byte[] rotateAndEncode(PixelData pixels) {
+        if (!scratchLock.tryLock()) {
+            return toImageFormat(ImageUtils.rotate180(pixels, null));
+        }
+        try {
+            scratchImage = ImageUtils.rotate180(pixels, scratchImage);
+            return toImageFormat(scratchImage);
+        }
+        finally {
+            scratchLock.unlock();
+        }
+    }
+
+    /**
+     * Identifies the device ready image format of this StreamDeck. Decks that produce identical bytes for the same
+     * image must return the same key, as prepared images are cached under it.
+     * 
+     * @return key of the image format
+     */
+    public String getImageFormatKey() {
+        return getClass().getName() + "/" + imageEncoder.getFormatKey();
+    }
+
+    /**
+     * Returns the encoder used when no other encoder was set. StreamDecks whose image format is not JPEG override
+     * this.
+     * 
+     * @return default encoder of this StreamDeck
+     */
+    protected ImageEncoder getDefaultImageEncoder() {
+        return ImageIOJpegEncoder.DEFAULT;
+    }
+
+    /**
+     * Returns the format of the encoded images the device accepts. StreamDecks whose image format is not JPEG
+     * override this together with {@link #getDefaultImageEncoder()}.
+     * 
+     * @return image format of the device
+     */
+    protected ImageFormat getImageFormat() {
+        return ImageFormat.JPEG;
+    }
+
     @Override
     public void reset() {
         sendFeatureReport(getResetCommand());
@@ -79,7 +249,8 @@ public abstract class BasicHidStreamDeck implements StreamDeck {
 
     @Override
     public void close() {
-        executorService.shutdown();
+        keyEventDispatcher.close();
+        stopDeviceWriter();
         if (keyController != null) {
 
             this.keyController.interrupt();
@@ -91,95 +262,757 @@ public abstract class BasicHidStreamDeck implements StreamDeck {
             }
         }
         this.setBrightness(0);
-        this.clear();
-        device.close();
+        try {
+            this.clear();
+        }
+        catch (IllegalStateException e) {
+            // The device is gone, e.g. unplugged, so there are no keys left to blank
+        }
+        transport.close();
+        synchronized (this) {
+            if (statistics != null) {
+                statistics.unregister();
+            }
+        }
     }
 
     @Override
     public void addKeyListener(KeyListener listener) {
-        synchronized (this.listeners) {
-            this.listeners.add(listener);
+        keyEventDispatcher.addListener(listener);
+    }
+
+    @Override
+    public void removeKeyListener(KeyListener listener) {
+        keyEventDispatcher.removeListener(listener);
+    }
+
+    /**
+     * Returns the dispatcher that delivers key events to the listeners of this deck. It can be used to configure
+     * queue capacity, overflow policy and executor, and to read per-listener latency and queue depth.
+     *
+     * @return key event dispatcher
+     */
+    public EventDispatcher<KeyListener, KeyEvent> getKeyEventDispatcher() {
+        return keyEventDispatcher;
+    }
+
+    @Override
+    public void clear(int keyIndex) {
+        if (keyIndex >= getKeys() || keyIndex < 0) {
+            throw new IllegalArgumentException("Key Index out of bounds");
         }
+        replaceImage(keyIndex, getBlankImageData());
+    }
 
+    @Override
+    public void clear() {
+        replaceAllImages(getBlankImageData());
     }
 
     @Override
-    public void removeKeyListener(KeyListener listener) {
-        synchronized (this.listeners) {
-            this.listeners.remove(listener);
+    public void setImage(int keyIndex, Image img) {
+        if (keyIndex >= getKeys() || keyIndex < 0) {
+            throw new IllegalArgumentException("Key Index out of bounds");
         }
+        checkDimensions(img);
 
+        replaceImage(keyIndex, prepareImage(img));
     }
 
     @Override
-    public void clear(int keyIndex) {
-        int pixels = getPixels();
-        BufferedImage img = new BufferedImage(pixels, pixels, BufferedImage.TYPE_3BYTE_BGR);
+    public void setImage(Image img) {
+        checkDimensions(img);
 
-        Graphics2D g2d = img.createGraphics();
-        g2d.setColor(Color.BLACK);
-        g2d.fillRect(0, 0, pixels, pixels);
-        g2d.dispose();
+        replaceAllImages(prepareImage(img));
+    }
 
-        setImage(keyIndex, img);
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The images are encoded in parallel on the common fork-join pool and on the calling thread. Once all are
+     * encoded, their pages are written like {@link #setImageData(Map)} does.
+     */
+    @Override
+    public void setImages(Map<Integer, ? extends Image> images) {
+        for (Map.Entry<Integer, ? extends Image> entry : images.entrySet()) {
+            if (entry.getKey() >= getKeys() || entry.getKey() < 0) {
+                throw new IllegalArgumentException("Key Index out of bounds");
+            }
+            checkDimensions(entry.getValue());
+        }
+
+        setImageData(prepareImages(images));
+    }
+
+    /**
+     * Prepares the given images in parallel on the common fork-join pool and on the calling thread.
+     * 
+     * @return prepared images by keyIndex, in the order of the given map
+     */
+    Map<Integer, ImageData> prepareImages(Map<Integer, ? extends Image> images) {
+        Map<Integer, ImageData> prepared = new LinkedHashMap<>();
+        List<CompletableFuture<ImageData>> encodings = new ArrayList<>(images.size());
+        Image first = null;
+        for (Image img : images.values()) {
+            if (first == null) {
+                first = img;
+                continue;
+            }
+            encodings.add(CompletableFuture.supplyAsync(() -> prepareImage(img), ForkJoinPool.commonPool()));
+        }
+        Iterator<Integer> keys = images.keySet().iterator();
+        if (first != null) {
+            prepared.put(keys.next(), prepareImage(first));
+        }
+        for (CompletableFuture<ImageData> encoding : encodings) {
+            try {
+                prepared.put(keys.next(), encoding.join());
+            }
+            catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return prepared;
     }
 
     @Override
-    public void clear() {
-        int pixels = getPixels();
-        BufferedImage img = new BufferedImage(pixels, pixels, BufferedImage.TYPE_3BYTE_BGR);
+    public void setImage(int keyIndex, PixelData pixels) {
+        if (keyIndex >= getKeys() || keyIndex < 0) {
+            throw new IllegalArgumentException("Key Index out of bounds");
+        }
+        checkDimensions(pixels);
+
+        replaceImage(keyIndex, prepareImage(pixels));
+    }
 
-        Graphics2D g2d = img.createGraphics();
-        g2d.setColor(Color.BLACK);
-        g2d.fillRect(0, 0, pixels, pixels);
-        g2d.dispose();
+    /**
+     * Sets the image of the key at the given keyIndex to an image that is already encoded in the format of the
+     * device, e.g. a JPEG rendered on a server.
+     * 
+     * @param keyIndex
+     *            of key that is to be set
+     * @param image
+     *            encoded image
+     * @param alreadyOriented
+     *            true if the image is already flipped as the device expects it and can be sent as it is
+     * @see #prepareEncodedImage(ByteBuffer, boolean)
+     */
+    public void setEncodedImage(int keyIndex, byte[] image, boolean alreadyOriented) {
+        setEncodedImage(keyIndex, ByteBuffer.wrap(image), alreadyOriented);
+    }
+
+    /**
+     * Sets the image of the key at the given keyIndex to the encoded image between position and limit of the given
+     * buffer.
+     * 
+     * @param keyIndex
+     *            of key that is to be set
+     * @param image
+     *            encoded image
+     * @param alreadyOriented
+     *            true if the image is already flipped as the device expects it and can be sent as it is
+     * @see #prepareEncodedImage(ByteBuffer, boolean)
+     */
+    public void setEncodedImage(int keyIndex, ByteBuffer image, boolean alreadyOriented) {
+        if (keyIndex >= getKeys() || keyIndex < 0) {
+            throw new IllegalArgumentException("Key Index out of bounds");
+        }
+        replaceImage(keyIndex, prepareEncodedImage(image, alreadyOriented));
+    }
 
-        setImage(img);
+    /**
+     * Prepares an image that is already encoded in the format of the device. An oriented image is only checked for
+     * its format and dimensions and split into pages as it is, the returned ImageData is backed by the given buffer,
+     * which must not change while the ImageData is in use. An image that is not oriented yet is decoded and prepared
+     * like {@link #prepareImage(Image)}, as flipping a JPEG without decoding it is only lossless for images made of
+     * whole blocks, which key sized images with subsampled chroma are not.
+     * 
+     * @param image
+     *            encoded image between position and limit of the buffer
+     * @param alreadyOriented
+     *            true if the image is already flipped as the device expects it and can be sent as it is
+     * @return prepared image
+     */
+    public ImageData prepareEncodedImage(ByteBuffer image, boolean alreadyOriented) {
+        if (alreadyOriented) {
+            Dimension dimensions = getImageFormat().readDimensions(image);
+            checkDimensions(dimensions.width, dimensions.height);
+            return new ImageData(image, getImagePageSize() - getImagePageHeaderSize());
+        }
+        return prepareImage(decode(image));
+    }
+
+    private static BufferedImage decode(ByteBuffer image) {
+        ByteArrayInputStream in;
+        if (image.hasArray()) {
+            in = new ByteArrayInputStream(image.array(), image.arrayOffset() + image.position(), image.remaining());
+        }
+        else {
+            byte[] bytes = new byte[image.remaining()];
+            image.duplicate().get(bytes);
+            in = new ByteArrayInputStream(bytes);
+        }
+        BufferedImage decoded;
+        try {
+            decoded = ImageIO.read(in);
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("Supplied image could not be decoded", e);
+        }
+        if (decoded == null) {
+            throw new IllegalArgumentException("Supplied image could not be decoded");
+        }
+        return decoded;
+    }
+
+    /**
+     * Sets the image of the key at the given keyIndex to an image prepared by {@link #prepareImage(Image)}.
+     * 
+     * @param keyIndex
+     *            of key that is to be set
+     * @param imageData
+     *            prepared image that is to be set
+     */
+    public void setImageData(int keyIndex, ImageData imageData) {
+        if (keyIndex >= getKeys() || keyIndex < 0) {
+            throw new IllegalArgumentException("Key Index out of bounds");
+        }
+        checkImageData(imageData);
+
+        replaceImage(keyIndex, imageData);
+    }
+
+    /**
+     * Sets the images of several keys to images prepared by {@link #prepareImage(Image)}. The pages of all keys are
+     * written back-to-back without interleaving other writes to the device.
+     * 
+     * @param images
+     *            prepared images by keyIndex
+     */
+    public void setImageData(Map<Integer, ImageData> images) {
+        for (Map.Entry<Integer, ImageData> entry : images.entrySet()) {
+            if (entry.getKey() >= getKeys() || entry.getKey() < 0) {
+                throw new IllegalArgumentException("Key Index out of bounds");
+            }
+            checkImageData(entry.getValue());
+        }
+
+        List<PendingImage> superseded = new ArrayList<>();
+        for (int keyIndex : images.keySet()) {
+            PendingImage pending = supersede(keyIndex);
+            if (pending != null) {
+                superseded.add(pending);
+            }
+        }
+        try {
+            synchronized (imagePageReport) {
+                for (Map.Entry<Integer, ImageData> entry : images.entrySet()) {
+                    writePages(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        catch (RuntimeException e) {
+            fail(superseded, e);
+            throw e;
+        }
+        complete(superseded);
     }
 
     @Override
-    public void setImage(int keyIndex, Image img) {
+    public CompletableFuture<Void> setImageAsync(int keyIndex, Image img) {
         if (keyIndex >= getKeys() || keyIndex < 0) {
             throw new IllegalArgumentException("Key Index out of bounds");
         }
+        checkDimensions(img);
+
+        return queueImage(keyIndex, img, null);
+    }
+
+    /**
+     * Queues an image prepared by {@link #prepareImage(Image)} for the key at the given keyIndex, like
+     * {@link #setImageAsync(int, Image)} does for images. As the image is already encoded, the writer thread only
+     * sends its pages.
+     * 
+     * @param keyIndex
+     *            of key that is to be set
+     * @param imageData
+     *            prepared image that is to be set
+     * @return future that completes when the image was written or superseded
+     */
+    public CompletableFuture<Void> setImageDataAsync(int keyIndex, ImageData imageData) {
+        if (keyIndex >= getKeys() || keyIndex < 0) {
+            throw new IllegalArgumentException("Key Index out of bounds");
+        }
+        checkImageData(imageData);
+
+        return queueImage(keyIndex, null, imageData);
+    }
+
+    private CompletableFuture<Void> queueImage(int keyIndex, Image img, ImageData imageData) {
+        queueLock.lock();
+        try {
+            if (closed) {
+                return closedFuture();
+            }
+            startDeviceWriter();
+            int sequence = imageSequences.incrementAndGet(keyIndex);
+            PendingImage pending = pendingImages.get(keyIndex);
+            if (pending != null) {
+                // Coalesce with the update that has not been written yet, its callers wait for this image now
+                pending.img = img;
+                pending.imageData = imageData;
+                pending.sequence = sequence;
+                return pending.future;
+            }
+            pending = new PendingImage(img, imageData, sequence);
+            pendingImages.put(keyIndex, pending);
+            queueChanged.signalAll();
+            return pending.future;
+        }
+        finally {
+            queueLock.unlock();
+        }
+    }
+
+    @Override
+    public void setBrightness(int percentBrightness) {
+        PendingBrightness superseded;
+        queueLock.lock();
+        try {
+            brightnessSequence.incrementAndGet();
+            superseded = pendingBrightness;
+            pendingBrightness = null;
+        }
+        finally {
+            queueLock.unlock();
+        }
+        synchronized (brightnessLock) {
+            sendBrightness(percentBrightness);
+        }
+        if (superseded != null) {
+            superseded.future.complete(null);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> setBrightnessAsync(int percentBrightness) {
+        queueLock.lock();
+        try {
+            if (closed) {
+                return closedFuture();
+            }
+            startDeviceWriter();
+            int sequence = brightnessSequence.incrementAndGet();
+            if (pendingBrightness != null) {
+                pendingBrightness.percentBrightness = percentBrightness;
+                pendingBrightness.sequence = sequence;
+                return pendingBrightness.future;
+            }
+            pendingBrightness = new PendingBrightness(percentBrightness, sequence);
+            queueChanged.signalAll();
+            return pendingBrightness.future;
+        }
+        finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the cache of prepared images StreamDecks use when they are created.
+     * 
+     * @return default image cache or null if caching is disabled by default
+     */
+    public static ImageDataCache getDefaultImageCache() {
+        return defaultImageCache;
+    }
+
+    /**
+     * Sets the cache of prepared images StreamDecks use when they are created, e.g. a
+     * {@link de.carahoff.streamdeck.util.PersistentImageDataCache} so decks attached later paint their keys from
+     * images encoded in an earlier run. StreamDecks that already exist keep their cache.
+     * 
+     * @param imageCache
+     *            that is to be used, null disables caching by default
+     */
+    public static void setDefaultImageCache(ImageDataCache imageCache) {
+        defaultImageCache = imageCache;
+    }
+
+    /**
+     * Returns the cache of prepared images used by this StreamDeck. By default all StreamDecks share one cache.
+     * 
+     * @return image cache or null if caching is disabled
+     */
+    public ImageDataCache getImageCache() {
+        return imageCache;
+    }
+
+    /**
+     * Sets the cache of prepared images used by this StreamDeck.
+     * 
+     * @param imageCache
+     *            that is to be used, null disables caching
+     */
+    public void setImageCache(ImageDataCache imageCache) {
+        this.imageCache = imageCache;
+    }
+
+    public ImageEncoder getImageEncoder() {
+        return imageEncoder;
+    }
+
+    /**
+     * Sets the encoder images are converted to the device format with, e.g. to change JPEG quality and chroma
+     * subsampling. Images already sent keep their encoding.
+     * 
+     * @param imageEncoder
+     *            that is to be used, null restores the default encoder
+     */
+    public void setImageEncoder(ImageEncoder imageEncoder) {
+        this.imageEncoder = imageEncoder == null ? getDefaultImageEncoder() : imageEncoder;
+        this.blankImageData = null;
+    }
+
+    /**
+     * Returns whether StreamDecks register {@link DeckStatistics} when they are created.
+     * 
+     * @return true if statistics are enabled by default
+     */
+    public static boolean isDefaultStatisticsEnabled() {
+        return defaultStatisticsEnabled;
+    }
+
+    /**
+     * Sets whether StreamDecks create and register {@link DeckStatistics} like {@link #enableStatistics()} when they
+     * are created. StreamDecks that already exist keep their metrics.
+     * 
+     * @param enabled
+     *            true to enable statistics by default
+     */
+    public static void setDefaultStatisticsEnabled(boolean enabled) {
+        defaultStatisticsEnabled = enabled;
+    }
+
+    public DeckMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics this StreamDeck records encode and write times, write failures and key reports with.
+     * 
+     * @param metrics
+     *            that are to be recorded, null records nothing
+     */
+    public void setMetrics(DeckMetrics metrics) {
+        this.metrics = metrics == null ? DeckMetrics.NONE : metrics;
+    }
+
+    /**
+     * Records the metrics of this StreamDeck in {@link DeckStatistics} and registers them as MXBean named after the
+     * serial number of the deck. The statistics are unregistered when the deck is closed. Calling this again returns
+     * the same statistics.
+     * 
+     * @return statistics of this StreamDeck
+     */
+    public synchronized DeckStatistics enableStatistics() {
+        if (statistics == null) {
+            statistics = new DeckStatistics();
+            String name = transport.getSerialNumber();
+            if (name == null || name.isEmpty()) {
+                name = getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this));
+            }
+            statistics.register(name);
+        }
+        setMetrics(statistics);
+        return statistics;
+    }
+
+    /**
+     * Sets how long a single blocking read for key reports may take. Key reports are delivered as soon as they
+     * arrive, longer timeouts only wake the key reading thread less often while idle and make close() wait longer.
+     * 
+     * @param millis
+     *            read timeout in milliseconds
+     */
+    public void setKeyReadTimeout(int millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("Key read timeout must be at least one millisecond");
+        }
+        this.keyReadTimeoutMs = millis;
+    }
+
+    /**
+     * Returns the USB device of this StreamDeck.
+     *
+     * @return HidDevice or null if the StreamDeck is connected through another HidTransport
+     */
+    public HidDevice getDevice() {
+        if (transport instanceof HidDeviceTransport) {
+            return ((HidDeviceTransport) transport).getDevice();
+        }
+        return null;
+    }
+
+    public HidTransport getTransport() {
+        return this.transport;
+    }
+
+    public String getFirmwareVersion() {
+        byte[] b = getFeatureReport(getGetFirmwareCommand());
+        return new String(Arrays.copyOfRange(b, getFirmwareOffset(), b.length)).trim();
+    }
+
+
+    private void checkDimensions(Image img) {
         if (img.getHeight(null) > getPixels() || img.getWidth(null) > getPixels()) {
             throw new IllegalArgumentException(String.format("Supplied image has wrong dimensions, expected %dx%d pixels", getPixels(), getPixels()));
             //TODO CH: could add/ offer resize Method -> Could lead to pixelated images
             //could offer resize Method that only downsizes lager images and centers image over black backround for smaller images
         }
+    }
 
-        Image flippedImg = flipImage(img);
+    private void checkDimensions(PixelData pixels) {
+        checkDimensions(pixels.getWidth(), pixels.getHeight());
+    }
 
-        byte[] imageBytes = toImageFormat(flippedImg);
-        ImageData imageData = new ImageData(imageBytes, getImagePageSize() - getImagePageHeaderSize());
-        byte[] data = new byte[getImagePageSize()];
+    private void checkDimensions(int width, int height) {
+        if (height > getPixels() || width > getPixels()) {
+            throw new IllegalArgumentException(String.format("Supplied image has wrong dimensions, expected %dx%d pixels", getPixels(), getPixels()));
+        }
+    }
 
-        int page = 0;
-        int pageCount = imageData.pageCount();
-        boolean lastPage = false;
-        while (page < pageCount) {
-            lastPage = (page == pageCount - 1);
+    private void checkImageData(ImageData imageData) {
+        if (imageData.getPageSize() != getImagePageSize() - getImagePageHeaderSize()) {
+            throw new IllegalArgumentException("Supplied image data was prepared for a different StreamDeck model");
+        }
+    }
 
-            byte[] payload = imageData.page(page);
-            byte[] header = imagePageHeader(page, translateKeyIndex(keyIndex, getColumns()), payload.length, lastPage);
+    ImageData getBlankImageData() {
+        ImageData imageData = blankImageData;
+        if (imageData == null) {
+            int pixels = getPixels();
+            BufferedImage img = new BufferedImage(pixels, pixels, BufferedImage.TYPE_3BYTE_BGR);
 
-            System.arraycopy(header, 0, data, 0, header.length);
-            System.arraycopy(payload, 0, data, header.length, payload.length);
+            Graphics2D g2d = img.createGraphics();
+            g2d.setColor(Color.BLACK);
+            g2d.fillRect(0, 0, pixels, pixels);
+            g2d.dispose();
 
-            write(data);
-            page++;
+            imageData = encodeImage(img);
+            blankImageData = imageData;
         }
+        return imageData;
     }
 
-    @Override
-    public void setImage(Image img) {
+    /**
+     * Flips and encodes the given image into the device ready format of this StreamDeck, or takes it from the image
+     * cache. The result can be sent repeatedly with {@link #setImageData(int, ImageData)}.
+     * 
+     * @param img
+     *            that is to be prepared
+     * @return prepared image
+     */
+    public ImageData prepareImage(Image img) {
+        checkDimensions(img);
+        ImageDataCache cache = this.imageCache;
+        if (cache == null) {
+            metrics.imagePrepared(false);
+            return encodeImage(img);
+        }
+
+        Image source = img instanceof BufferedImage ? img : ImageUtils.toBufferedImage(img);
+        String format = getImageFormatKey();
+        long fingerprint = ImageUtils.fingerprint(source);
+        ImageData imageData = cache.get(format, fingerprint);
+        metrics.imagePrepared(imageData != null);
+        if (imageData == null) {
+            imageData = encodeImage(source);
+            cache.put(format, fingerprint, imageData);
+        }
+        return imageData;
+    }
+
+    /**
+     * Flips and encodes the given pixels into the device ready format of this StreamDeck, or takes them from the
+     * image cache, like {@link #prepareImage(Image)} does for images. Pixels with the same content as a
+     * BufferedImage of the matching type share its cache entry.
+     * 
+     * @param pixels
+     *            that are to be prepared
+     * @return prepared image
+     */
+    public ImageData prepareImage(PixelData pixels) {
+        checkDimensions(pixels);
+        ImageDataCache cache = this.imageCache;
+        if (cache == null) {
+            metrics.imagePrepared(false);
+            return encodeImage(pixels);
+        }
+
+        String format = getImageFormatKey();
+        long fingerprint = ImageUtils.fingerprint(pixels);
+        ImageData imageData = cache.get(format, fingerprint);
+        metrics.imagePrepared(imageData != null);
+        if (imageData == null) {
+            imageData = encodeImage(pixels);
+            cache.put(format, fingerprint, imageData);
+        }
+        return imageData;
+    }
+
+    private ImageData encodeImage(Image img) {
+        DeckMetrics metrics = this.metrics;
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        byte[] imageBytes = toDeviceFormat(img);
+        if (metrics.isEnabled()) {
+            metrics.imageEncoded(System.nanoTime() - start, imageBytes.length);
+        }
+        return new ImageData(imageBytes, getImagePageSize() - getImagePageHeaderSize());
+    }
+
+    private ImageData encodeImage(PixelData pixels) {
+        DeckMetrics metrics = this.metrics;
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        byte[] imageBytes = toDeviceFormat(pixels);
+        if (metrics.isEnabled()) {
+            metrics.imageEncoded(System.nanoTime() - start, imageBytes.length);
+        }
+        return new ImageData(imageBytes, getImagePageSize() - getImagePageHeaderSize());
+    }
+
+    /**
+     * Writes the image of a key in place of its queued update. The futures of the queued update complete like the
+     * write does.
+     */
+    private void replaceImage(int keyIndex, ImageData imageData) {
+        PendingImage superseded = supersede(keyIndex);
+        try {
+            writeImageData(keyIndex, imageData);
+        }
+        catch (RuntimeException e) {
+            fail(superseded, e);
+            throw e;
+        }
+        complete(superseded);
+    }
+
+    private void replaceAllImages(ImageData imageData) {
+        List<PendingImage> superseded = supersedeAll();
+        try {
+            writeImageData(imageData);
+        }
+        catch (RuntimeException e) {
+            fail(superseded, e);
+            throw e;
+        }
+        complete(superseded);
+    }
+
+    /**
+     * Writes the same prepared image to all keys, only the page headers differ per key.
+     */
+    private void writeImageData(ImageData imageData) {
         for (int i = 0; i < getKeys(); i++) {
-            setImage(i, img);
+            writeImageData(i, imageData);
         }
     }
 
-    @Override
-    public void setBrightness(int percentBrightness) {
+    private void writeImageData(int keyIndex, ImageData imageData) {
+        synchronized (imagePageReport) {
+            writePages(keyIndex, imageData);
+        }
+    }
+
+    /**
+     * Writes all pages of the image through one reusable report buffer. The report ID is passed to the device
+     * separately, so the buffer only holds the header without it followed by the page payload. Callers must hold the
+     * lock on imagePageReport.
+     *
+     * @throws IllegalStateException
+     *             if the device did not take a page, e.g. because it was unplugged; the remaining pages are not sent
+     */
+    private void writePages(int keyIndex, ImageData imageData) {
+        DeckMetrics metrics = this.metrics;
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        int deviceKeyIndex = translateKeyIndex(keyIndex, getColumns());
+        int headerLength = imagePageHeader.length - 1;
+        int pageCount = imageData.pageCount();
+
+        for (int page = 0; page < pageCount; page++) {
+            int payloadLength = imageData.copyPage(page, imagePageReport, headerLength);
+            // Reports are sent at full length, the rest of a short last page is zero padding
+            Arrays.fill(imagePageReport, headerLength + payloadLength, imagePageReport.length, (byte) 0);
+            imagePageHeader(imagePageHeader, page, deviceKeyIndex, payloadLength, page == pageCount - 1);
+            System.arraycopy(imagePageHeader, 1, imagePageReport, 0, headerLength);
+
+            if (transport.write(imagePageReport, imagePageReport.length, imagePageHeader[0]) < 0) {
+                metrics.writeFailed();
+                throw new IllegalStateException("Unable to write page " + page + " of the image of key " + keyIndex);
+            }
+        }
+        if (metrics.isEnabled()) {
+            metrics.imageWritten(pageCount, imageData.length(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Removes the queued update of the given key, as a synchronous write replaces it. Bumping the sequence keeps the
+     * image writer from sending an update it already took from the queue after the synchronous write.
+     */
+    private PendingImage supersede(int keyIndex) {
+        queueLock.lock();
+        try {
+            imageSequences.incrementAndGet(keyIndex);
+            return pendingImages.remove(keyIndex);
+        }
+        finally {
+            queueLock.unlock();
+        }
+    }
+
+    private List<PendingImage> supersedeAll() {
+        queueLock.lock();
+        try {
+            for (int i = 0; i < imageSequences.length(); i++) {
+                imageSequences.incrementAndGet(i);
+            }
+            List<PendingImage> superseded = new ArrayList<>(pendingImages.values());
+            pendingImages.clear();
+            return superseded;
+        }
+        finally {
+            queueLock.unlock();
+        }
+    }
+
+    private static void complete(PendingImage superseded) {
+        if (superseded != null) {
+            superseded.future.complete(null);
+        }
+    }
+
+    private static void complete(List<PendingImage> superseded) {
+        for (PendingImage pending : superseded) {
+            pending.future.complete(null);
+        }
+    }
+
+    private static void fail(PendingImage superseded, RuntimeException e) {
+        if (superseded != null) {
+            superseded.future.completeExceptionally(e);
+        }
+    }
+
+    private static void fail(List<PendingImage> superseded, RuntimeException e) {
+        for (PendingImage pending : superseded) {
+            pending.future.completeExceptionally(e);
+        }
+    }
+
+    private void sendBrightness(int percentBrightness) {
         if (percentBrightness > 100) {
             percentBrightness = 100;
         }
@@ -192,15 +1025,58 @@ public abstract class BasicHidStreamDeck implements StreamDeck {
         sendFeatureReport(report);
     }
 
-    public HidDevice getDevice() {
-        return this.device;
+    /**
+     * Starts the thread that sends queued writes. Callers must hold queueLock.
+     */
+    private void startDeviceWriter() {
+        if (deviceWriter == null) {
+            deviceWriter = ThreadSupport.newThread(new DeviceWriter(), "StreamDeck writer", true);
+            deviceWriter.start();
+        }
     }
 
-    public String getFirmwareVersion() {
-        byte[] b = getFeatureReport(getGetFirmwareCommand());
-        return new String(Arrays.copyOfRange(b, getFirmwareOffset(), b.length)).trim();
+    /**
+     * Stops the thread that sends queued writes and cancels the writes it did not send. Writes queued afterwards fail.
+     */
+    private void stopDeviceWriter() {
+        Thread writer;
+        List<PendingImage> cancelled;
+        PendingBrightness cancelledBrightness;
+        queueLock.lock();
+        try {
+            closed = true;
+            writer = deviceWriter;
+            deviceWriter = null;
+            cancelled = new ArrayList<>(pendingImages.values());
+            pendingImages.clear();
+            cancelledBrightness = pendingBrightness;
+            pendingBrightness = null;
+        }
+        finally {
+            queueLock.unlock();
+        }
+        if (writer != null) {
+            writer.interrupt();
+            try {
+                writer.join();
+            }
+            catch (InterruptedException e) {
+                System.out.println("Unable to stop deviceWriter thread");
+            }
+        }
+        for (PendingImage pending : cancelled) {
+            pending.future.cancel(false);
+        }
+        if (cancelledBrightness != null) {
+            cancelledBrightness.future.cancel(false);
+        }
     }
 
+    private static CompletableFuture<Void> closedFuture() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        future.completeExceptionally(new IllegalStateException("StreamDeck is closed"));
+        return future;
+    }
 
     private byte[] getFeatureReport(byte[] payload) {
         byte reportId = payload[0];
@@ -209,7 +1085,7 @@ public abstract class BasicHidStreamDeck implements StreamDeck {
         if (payload.length > 1) {
             System.arraycopy(payload, 1, b, 0, payload.length - 1);
         }
-        device.getFeatureReport(b, reportId);
+        transport.getFeatureReport(b, reportId);
         byte[] res = new byte[getFeatureReportSize()];
         res[0] = reportId;
         System.arraycopy(b, 0, res, 1, b.length);
@@ -222,80 +1098,171 @@ public abstract class BasicHidStreamDeck implements StreamDeck {
         if (payload.length > 1) {
             System.arraycopy(payload, 1, b, 0, payload.length - 1);
         }
-        device.sendFeatureReport(b, reportId);
+        transport.sendFeatureReport(b, reportId);
     }
 
-    private void write(byte[] data) {
-        byte reportId = data[0];
-        byte[] b = new byte[data.length - 1];
-        if (data.length > 1) {
-            System.arraycopy(data, 1, b, 0, data.length - 1);
-        }
-        device.write(b, b.length, reportId);
+    private void emitKeyEvent(KeyEvent event) {
+        keyEventDispatcher.dispatch(event);
     }
 
-    private void emitKeyEvent(KeyEvent event) {
-        for (KeyListener listener : listeners) {
-            executorService.submit(() -> listener.onEvent(event));
+    /**
+     * Parses a key report into a bit mask with one bit per key, set while the key is pressed.
+     */
+    long parseKeyStates(byte[] dataReceived, int length) {
+        long keyStates = 0;
+        int columns = getColumns();
+        for (int i = getKeyStateOffset(); i < length; i++) {
+            if (dataReceived[i] == 1) {
+                keyStates |= 1L << translateKeyIndex(i - getKeyStateOffset(), columns);
+            }
         }
+
+        return keyStates;
     }
 
-    private BitSet parseKeyStates(byte[] dataReceived) {
-        BitSet keyStates = new BitSet(getKeys());
-        for (int i = getKeyStateOffset(); i < dataReceived.length; i++) {
-            keyStates.set(translateKeyIndex(i - getKeyStateOffset(), getColumns()), (dataReceived[i] == 1));
+    private static class PendingImage {
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private Image img;
+        private ImageData imageData;
+        private int sequence;
+
+        private PendingImage(Image img, ImageData imageData, int sequence) {
+            this.img = img;
+            this.imageData = imageData;
+            this.sequence = sequence;
         }
+    }
 
-        return keyStates;
+    private static class PendingBrightness {
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private int percentBrightness;
+        private int sequence;
+
+        private PendingBrightness(int percentBrightness, int sequence) {
+            this.percentBrightness = percentBrightness;
+            this.sequence = sequence;
+        }
     }
 
     /**
-     * Blocks until event is received
-     * 
-     * @return
+     * Sends queued writes. A queued brightness goes first, then images in the order their keys were first queued,
+     * each key with its most recent image.
      */
-    private BitSet readKeyStates() {
-        byte[] keyBuffer = new byte[getKeyStateOffset() + getKeys()];
-        int res;
-        while (((res = device.read(keyBuffer, 2)) == 0) && !this.keyController.isInterrupted())
-            ;
-        if (res > 0) {
-            return parseKeyStates(keyBuffer);
+    private class DeviceWriter implements Runnable {
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                PendingBrightness brightness = null;
+                PendingImage pending = null;
+                int keyIndex = 0;
+                Image img = null;
+                ImageData imageData = null;
+                int sequence;
+                queueLock.lock();
+                try {
+                    try {
+                        while (pendingImages.isEmpty() && pendingBrightness == null) {
+                            queueChanged.await();
+                        }
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    if (pendingBrightness != null) {
+                        brightness = pendingBrightness;
+                        pendingBrightness = null;
+                        sequence = brightness.sequence;
+                    }
+                    else {
+                        Iterator<Map.Entry<Integer, PendingImage>> iterator = pendingImages.entrySet().iterator();
+                        Map.Entry<Integer, PendingImage> entry = iterator.next();
+                        iterator.remove();
+                        keyIndex = entry.getKey();
+                        pending = entry.getValue();
+                        img = pending.img;
+                        imageData = pending.imageData;
+                        sequence = pending.sequence;
+                    }
+                }
+                finally {
+                    queueLock.unlock();
+                }
+
+                if (brightness != null) {
+                    writeBrightness(brightness, sequence);
+                }
+                else {
+                    writeImage(keyIndex, pending, img, imageData, sequence);
+                }
+            }
         }
-        else {
-            return null;
+
+        private void writeBrightness(PendingBrightness brightness, int sequence) {
+            try {
+                synchronized (brightnessLock) {
+                    if (brightnessSequence.get() == sequence) {
+                        sendBrightness(brightness.percentBrightness);
+                    }
+                }
+                brightness.future.complete(null);
+            }
+            catch (RuntimeException e) {
+                brightness.future.completeExceptionally(e);
+            }
+        }
+
+        private void writeImage(int keyIndex, PendingImage pending, Image img, ImageData imageData, int sequence) {
+            try {
+                if (imageData == null) {
+                    imageData = prepareImage(img);
+                }
+                synchronized (imagePageReport) {
+                    if (imageSequences.get(keyIndex) == sequence) {
+                        writePages(keyIndex, imageData);
+                    }
+                }
+                pending.future.complete(null);
+            }
+            catch (RuntimeException e) {
+                pending.future.completeExceptionally(e);
+            }
         }
     }
 
+    /**
+     * Reads key reports with a blocking read. The read only returns early when a report arrives, the timeout merely
+     * bounds how long close() waits for this thread. The reader runs on a platform thread even if virtual threads are
+     * enabled, the key events are delivered by the dispatcher's threads.
+     */
     private class KeyController implements Runnable {
 
         @Override
         public void run() {
-            int keyCount = getKeys();
-            BitSet keyStates = new BitSet(keyCount);
+            byte[] keyBuffer = new byte[getKeyStateOffset() + getKeys()];
+            long keyStates = 0;
             while (!Thread.currentThread().isInterrupted()) {
-                BitSet newKeyStates = readKeyStates();
-                if (newKeyStates == null || Thread.currentThread().isInterrupted()) {
+                int res = transport.read(keyBuffer, keyReadTimeoutMs);
+                if (res < 0 || Thread.currentThread().isInterrupted()) {
                     return;
                 }
-                for (int i = 0; i < keyCount; i++) {
-                    boolean oldKeyState = keyStates.get(i);
-                    boolean newKeyState = newKeyStates.get(i);
-                    if (oldKeyState == newKeyState) {
-                        continue;
-                    }
-                    KeyEvent keyEvent;
-                    if (newKeyState) {
-                        keyEvent = new KeyEvent(i, Type.PRESSED);
-                        //key was pressed
+                if (res == 0) {
+                    continue;
+                }
+                metrics.keyReportRead();
+                long newKeyStates = parseKeyStates(keyBuffer, Math.min(res, keyBuffer.length));
+                long changed = keyStates ^ newKeyStates;
+                keyStates = newKeyStates;
+                while (changed != 0) {
+                    int i = Long.numberOfTrailingZeros(changed);
+                    changed &= changed - 1;
+                    if ((newKeyStates & (1L << i)) != 0) {
+                        emitKeyEvent(new KeyEvent(i, Type.PRESSED));
                     }
                     else {
-                        keyEvent = new KeyEvent(i, Type.RELEASED);
-                        //key was released
+                        emitKeyEvent(new KeyEvent(i, Type.RELEASED));
                     }
-                        emitKeyEvent(keyEvent);
                 }
-                keyStates = newKeyStates;
             }
         }
     }
@@ -0,0 +1,53 @@
+package de.carahoff.streamdeck.device;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.carahoff.streamdeck.util.ThreadSupport;
+
+/**
+ * Single scheduler thread shared by the timers of all StreamDecks, e.g. the sleep countdown of
+ * {@link AwareStreamDeck}.
+ */
+public final class DeckScheduler {
+    private static final ScheduledThreadPoolExecutor EXECUTOR;
+    private static final AtomicLong scheduledTimers = new AtomicLong();
+
+    static {
+        EXECUTOR = new ScheduledThreadPoolExecutor(1, ThreadSupport.newThreadFactory("StreamDeck scheduler"));
+        EXECUTOR.setRemoveOnCancelPolicy(true);
+    }
+
+    private DeckScheduler() {
+    }
+
+    static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        scheduledTimers.incrementAndGet();
+        return EXECUTOR.schedule(task, delay, unit);
+    }
+
+    static ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        scheduledTimers.incrementAndGet();
+        return EXECUTOR.scheduleWithFixedDelay(task, initialDelay, delay, unit);
+    }
+
+    /**
+     * Returns the number of timers scheduled since startup.
+     *
+     * @return number of scheduled timers
+     */
+    public static long getScheduledTimerCount() {
+        return scheduledTimers.get();
+    }
+
+    /**
+     * Returns the number of timers that are waiting to run.
+     *
+     * @return number of pending timers
+     */
+    public static int getPendingTimerCount() {
+        return EXECUTOR.getQueue().size();
+    }
+}
@@ -0,0 +1,131 @@
+package de.carahoff.streamdeck.device;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Running brightness fade of an {@link AwareStreamDeck}. The fade advances in steps on the {@link DeckScheduler} and
+ * only hands on a brightness when its integer value changes. Each step computes the brightness from the time elapsed
+ * since the fade started, and the next step is scheduled a fixed delay after the previous one ended, so a delayed
+ * scheduler skips steps instead of catching up on them in a burst.
+ */
+public class FadeHandle {
+    private static final long FADE_DELAY_MS = 1000 / 30;
+
+    private final BiConsumer<FadeHandle, Integer> brightnessSetter;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private ScheduledFuture<?> task;
+    private int startBrightness;
+    private int targetBrightness;
+    private long startNanos;
+    private long durationNanos;
+    private int lastBrightness;
+    private boolean finishing;
+
+    FadeHandle(int startBrightness, int targetBrightness, Duration duration, BiConsumer<FadeHandle, Integer> brightnessSetter) {
+        this.brightnessSetter = brightnessSetter;
+        this.startBrightness = startBrightness;
+        this.lastBrightness = startBrightness;
+        this.targetBrightness = targetBrightness;
+        this.startNanos = System.nanoTime();
+        this.durationNanos = Math.max(0, duration.toNanos());
+    }
+
+    static FadeHandle completed(int brightness) {
+        FadeHandle fade = new FadeHandle(brightness, brightness, Duration.ZERO, null);
+        fade.completion.complete(null);
+        return fade;
+    }
+
+    void start() {
+        synchronized (this) {
+            task = DeckScheduler.scheduleWithFixedDelay(this::step, 0, FADE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Continues the fade from its current brightness towards a new target.
+     *
+     * @param percentEndBrightness
+     *            new target brightness in percent
+     * @param duration
+     *            the fade from the current brightness to the new target takes
+     * @return true if the fade was retargeted, false if it was already done or cancelled
+     */
+    public boolean retarget(int percentEndBrightness, Duration duration) {
+        synchronized (this) {
+            if (completion.isDone() || finishing) {
+                return false;
+            }
+            startBrightness = lastBrightness;
+            targetBrightness = Math.max(0, Math.min(100, percentEndBrightness));
+            startNanos = System.nanoTime();
+            durationNanos = Math.max(0, duration.toNanos());
+            return true;
+        }
+    }
+
+    /**
+     * Stops the fade at its current brightness.
+     */
+    public void cancel() {
+        ScheduledFuture<?> scheduled;
+        synchronized (this) {
+            scheduled = task;
+        }
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+        completion.cancel(false);
+    }
+
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    public int getTargetBrightness() {
+        synchronized (this) {
+            return targetBrightness;
+        }
+    }
+
+    /**
+     * Returns a future that completes when the target brightness was reached. It is cancelled when the fade is.
+     *
+     * @return completion of the fade
+     */
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    private void step() {
+        int brightness;
+        boolean changed;
+        boolean finished;
+        synchronized (this) {
+            if (completion.isDone()) {
+                return;
+            }
+            long elapsed = System.nanoTime() - startNanos;
+            finished = elapsed >= durationNanos;
+            double progress = finished ? 1 : (double) elapsed / durationNanos;
+            brightness = (int) Math.round(startBrightness + (targetBrightness - startBrightness) * progress);
+            changed = brightness != lastBrightness;
+            lastBrightness = brightness;
+            finishing = finished;
+        }
+        // The setter is called without holding the lock on this fade, it takes the lock on the deck
+        if (changed) {
+            brightnessSetter.accept(this, brightness);
+        }
+        if (finished) {
+            synchronized (this) {
+                task.cancel(false);
+            }
+            completion.complete(null);
+        }
+    }
+}
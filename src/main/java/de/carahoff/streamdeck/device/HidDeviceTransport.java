@@ -0,0 +1,58 @@
+package de.carahoff.streamdeck.device;
+
+import org.hid4java.HidDevice;
+
+/**
+ * HidTransport to a StreamDeck attached via USB.
+ */
+public class HidDeviceTransport implements HidTransport {
+    private final HidDevice device;
+
+    public HidDeviceTransport(HidDevice device) {
+        this.device = device;
+    }
+
+    public HidDevice getDevice() {
+        return device;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return device.isOpen();
+    }
+
+    @Override
+    public boolean open() {
+        return device.open();
+    }
+
+    @Override
+    public void close() {
+        device.close();
+    }
+
+    @Override
+    public int write(byte[] data, int length, byte reportId) {
+        return device.write(data, length, reportId);
+    }
+
+    @Override
+    public int read(byte[] data, int timeoutMillis) {
+        return device.read(data, timeoutMillis);
+    }
+
+    @Override
+    public int getFeatureReport(byte[] data, byte reportId) {
+        return device.getFeatureReport(data, reportId);
+    }
+
+    @Override
+    public int sendFeatureReport(byte[] data, byte reportId) {
+        return device.sendFeatureReport(data, reportId);
+    }
+
+    @Override
+    public String getSerialNumber() {
+        return device.getSerialNumber();
+    }
+}
@@ -1,10 +1,13 @@
 package de.carahoff.streamdeck.device;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.hid4java.HidDevice;
 import org.hid4java.HidManager;
@@ -15,83 +18,265 @@ import org.hid4java.event.HidServicesEvent;
 
 import de.carahoff.streamdeck.event.DeviceEvent;
 import de.carahoff.streamdeck.event.DeviceListener;
+import de.carahoff.streamdeck.event.EventDispatcher;
 import de.carahoff.streamdeck.event.DeviceEvent.Type;
+import de.carahoff.streamdeck.metrics.DeckMetrics;
 
+/**
+ * Finds attached StreamDecks and reports devices that are attached and detached. Which factories recognise a device is
+ * asked with {@link HidStreamDeckFactory#recognize(int, int)} once per pair of vendor and product IDs and then looked
+ * up by the IDs. Every factory that recognises a device adds an info for it. The recognised decks are enumerated once
+ * and then kept up to date from attach and detach events, so {@link #identify()} does not scan the USB devices again.
+ * <p>
+ * If no factories are set, the factories listed in
+ * {@code META-INF/services/de.carahoff.streamdeck.device.HidStreamDeckFactory} are loaded with {@link ServiceLoader}.
+ */
 public class HidStreamDecks {
-    private static List<HidStreamDeckFactory> factories;
-    private static final List<DeviceListener> listeners = new CopyOnWriteArrayList<>();
-    private static final ExecutorService executorService = Executors.newCachedThreadPool();
+    private static final List<HidStreamDeckFactory> factories = new CopyOnWriteArrayList<>();
+    private static final Object registryLock = new Object();
+    // Recognising factories by vendor and product ID, empty for IDs no factory recognises
+    private static final Map<Integer, List<HidStreamDeckFactory>> factoryIndex = new HashMap<>();
+    // Infos of the recognised decks by device path
+    private static final Map<String, List<HidStreamDeckInfo>> decks = new LinkedHashMap<>();
+    private static boolean factoriesConfigured;
+    private static boolean decksEnumerated;
+    private static final EventDispatcher<DeviceListener, DeviceEvent> deviceEventDispatcher = new EventDispatcher<>(DeviceListener::onEvent);
     private static final HidServices hidServices;
     private static final DeviceController deviceController = new DeviceController();
+    private static volatile DeckMetrics metrics = DeckMetrics.NONE;
 
     static {
         HidServicesSpecification hidServicesSpecification = new HidServicesSpecification();
         hidServicesSpecification.setAutoStart(false);
         hidServices = HidManager.getHidServices(hidServicesSpecification);
+        hidServices.addHidServicesListener(deviceController);
         hidServices.start();//TODO CH: remove from this method and make user call hidSercices.start() explicitly?
     }
 
+    /**
+     * Replaces the registered factories.
+     *
+     * @param addFactories
+     *            factories that create the StreamDecks to be found, null to load the factories listed as services
+     *            again
+     */
     public static void setFactories(List<HidStreamDeckFactory> addFactories) {
-        factories = addFactories;
+        synchronized (registryLock) {
+            factories.clear();
+            if (addFactories != null) {
+                factories.addAll(addFactories);
+            }
+            factoriesConfigured = addFactories != null;
+            invalidate();
+        }
     }
 
-    public static List<HidStreamDeckInfo> identify() {
+    /**
+     * Registers a factory in addition to the registered ones.
+     *
+     * @param factory
+     *            that creates the StreamDecks to be found
+     */
+    public static void addFactory(HidStreamDeckFactory factory) {
+        synchronized (registryLock) {
+            factories.add(factory);
+            factoriesConfigured = true;
+            invalidate();
+        }
+    }
+
+    /**
+     * Registers all factories found by {@link ServiceLoader} on the class path of the given class loader.
+     *
+     * @param classLoader
+     *            to look up factories with, null for the system class loader
+     * @return number of factories that were registered
+     */
+    public static int loadFactories(ClassLoader classLoader) {
+        List<HidStreamDeckFactory> loaded = new ArrayList<>();
+        for (HidStreamDeckFactory factory : ServiceLoader.load(HidStreamDeckFactory.class, classLoader)) {
+            loaded.add(factory);
+        }
+        synchronized (registryLock) {
+            factories.addAll(loaded);
+            factoriesConfigured = true;
+            invalidate();
+        }
+        return loaded.size();
+    }
+
+    public static List<HidStreamDeckFactory> getFactories() {
+        synchronized (registryLock) {
+            ensureFactories();
+            return new ArrayList<>(factories);
+        }
+    }
+
+    /**
+     * Returns the first registered factory for StreamDecks with the given IDs.
+     *
+     * @param vendorId
+     *            of the device
+     * @param productId
+     *            of the device
+     * @return factory or null if no factory recognises the device
+     */
+    public static HidStreamDeckFactory getFactory(int vendorId, int productId) {
+        List<HidStreamDeckFactory> recognizing = getFactories(vendorId, productId);
+        return recognizing.isEmpty() ? null : recognizing.get(0);
+    }
 
-        List<HidStreamDeckInfo> streamDeckInfos = new ArrayList<>();
-        for (HidDevice hidDevice : hidServices.getAttachedHidDevices()) {
-            for (HidStreamDeckFactory factory : factories) {
-                if (factory.recognize(hidDevice.getVendorId(), hidDevice.getProductId())) {
-                    streamDeckInfos.add(factory.createStreamDeckInfo(hidDevice));
+    /**
+     * Returns all factories that recognise StreamDecks with the given IDs, in the order they were registered.
+     *
+     * @param vendorId
+     *            of the device
+     * @param productId
+     *            of the device
+     * @return factories, empty if no factory recognises the device
+     */
+    public static List<HidStreamDeckFactory> getFactories(int vendorId, int productId) {
+        synchronized (registryLock) {
+            ensureFactories();
+            int ids = ids(vendorId, productId);
+            List<HidStreamDeckFactory> recognizing = factoryIndex.get(ids);
+            if (recognizing == null) {
+                recognizing = new ArrayList<>();
+                for (HidStreamDeckFactory factory : factories) {
+                    if (factory.recognize(vendorId, productId)) {
+                        recognizing.add(factory);
+                    }
                 }
+                recognizing = recognizing.isEmpty() ? Collections.<HidStreamDeckFactory>emptyList()
+                        : Collections.unmodifiableList(recognizing);
+                factoryIndex.put(ids, recognizing);
             }
+            return recognizing;
+        }
+    }
+
+    /**
+     * Returns the StreamDecks that are attached. The devices are enumerated on the first call and after the
+     * factories changed, otherwise the decks known from attach and detach events are returned.
+     *
+     * @return infos of the attached StreamDecks
+     */
+    public static List<HidStreamDeckInfo> identify() {
+        synchronized (registryLock) {
+            if (!decksEnumerated) {
+                decks.clear();
+                for (HidDevice hidDevice : hidServices.getAttachedHidDevices()) {
+                    deviceAttached(hidDevice);
+                }
+                decksEnumerated = true;
+            }
+            List<HidStreamDeckInfo> streamDeckInfos = new ArrayList<>();
+            for (List<HidStreamDeckInfo> infos : decks.values()) {
+                streamDeckInfos.addAll(infos);
+            }
+            return streamDeckInfos;
         }
-        return streamDeckInfos;
     }
 
     public static HidStreamDeckInfo identifyDevice(HidDevice hidDevice) {
-        for (HidStreamDeckFactory factory : factories) {
-            if (factory.recognize(hidDevice.getVendorId(), hidDevice.getProductId())) {
-                return factory.createStreamDeckInfo(hidDevice);
+        HidStreamDeckFactory factory = getFactory(hidDevice.getVendorId(), hidDevice.getProductId());
+        return factory == null ? null : factory.createStreamDeckInfo(hidDevice);
+    }
+
+    /**
+     * Loads the factories listed as services, unless factories were set. Callers must hold registryLock.
+     */
+    private static void ensureFactories() {
+        if (!factoriesConfigured) {
+            for (HidStreamDeckFactory factory : ServiceLoader.load(HidStreamDeckFactory.class)) {
+                factories.add(factory);
             }
+            factoriesConfigured = true;
+            factoryIndex.clear();
         }
-        return null;
     }
 
+    /**
+     * Forgets which factories recognise which device, so devices are matched and enumerated again. Callers must hold
+     * registryLock.
+     */
+    private static void invalidate() {
+        factoryIndex.clear();
+        decks.clear();
+        decksEnumerated = false;
+    }
 
+    private static int ids(int vendorId, int productId) {
+        return (vendorId & 0xffff) << 16 | (productId & 0xffff);
+    }
 
-    public static void addDeviceListener(DeviceListener listener) {
-        synchronized (listeners) {
-            if (listeners.isEmpty()) {
-                hidServices.addHidServicesListener(deviceController);
-            }
-            listeners.add(listener);
+    /**
+     * Callers must hold registryLock.
+     */
+    private static void deviceAttached(HidDevice hidDevice) {
+        List<HidStreamDeckInfo> infos = new ArrayList<>();
+        for (HidStreamDeckFactory factory : getFactories(hidDevice.getVendorId(), hidDevice.getProductId())) {
+            infos.add(factory.createStreamDeckInfo(hidDevice));
+        }
+        if (!infos.isEmpty()) {
+            decks.put(hidDevice.getPath(), infos);
         }
     }
 
+    public static void addDeviceListener(DeviceListener listener) {
+        deviceEventDispatcher.addListener(listener);
+    }
+
     public static void removeDeviceListener(DeviceListener listener) {
-        synchronized (listeners) {
-            listeners.remove(listener);
-            if (listeners.isEmpty()) {
-                hidServices.removeHidServicesListener(deviceController);
-            }
-        }
+        deviceEventDispatcher.removeListener(listener);
+    }
+
+    /**
+     * Returns the dispatcher that delivers device events to the device listeners, e.g. to configure its executor.
+     *
+     * @return device event dispatcher
+     */
+    public static EventDispatcher<DeviceListener, DeviceEvent> getDeviceEventDispatcher() {
+        return deviceEventDispatcher;
+    }
+
+    public static DeckMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics attached and detached devices and device failures are counted with, e.g. to alert on decks
+     * that keep reconnecting.
+     *
+     * @param deviceMetrics
+     *            that are to be recorded, null records nothing
+     */
+    public static void setMetrics(DeckMetrics deviceMetrics) {
+        metrics = deviceMetrics == null ? DeckMetrics.NONE : deviceMetrics;
     }
 
     private static void emitDeviceEvent(DeviceEvent event) {
-        for (DeviceListener listener : listeners) {
-            executorService.submit(() -> listener.onEvent(event));
-        }
+        metrics.deviceEvent(event.getType());
+        deviceEventDispatcher.dispatch(event);
     }
     
     private static class DeviceController implements HidServicesListener {
         @Override
         public void hidDeviceAttached(HidServicesEvent event) {
+            synchronized (registryLock) {
+                if (decksEnumerated) {
+                    deviceAttached(event.getHidDevice());
+                }
+            }
             DeviceEvent deviceEvent = new DeviceEvent(Type.ATTACHED, event.getHidDevice());
             emitDeviceEvent(deviceEvent);
         }
 
         @Override
         public void hidDeviceDetached(HidServicesEvent event) {
+            synchronized (registryLock) {
+                decks.remove(event.getHidDevice().getPath());
+            }
             DeviceEvent deviceEvent = new DeviceEvent(Type.DETACHED, event.getHidDevice());
             emitDeviceEvent(deviceEvent);
         }
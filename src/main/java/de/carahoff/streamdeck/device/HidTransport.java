@@ -0,0 +1,62 @@
+package de.carahoff.streamdeck.device;
+
+/**
+ * Report level connection to a StreamDeck. The methods follow the conventions of hid4java's HidDevice: report IDs
+ * are passed separately from the report data and negative return values signal an error.
+ */
+public interface HidTransport {
+
+    public boolean isOpen();
+
+    public boolean open();
+
+    public void close();
+
+    /**
+     * Writes an output report.
+     *
+     * @param data
+     *            report without the report ID
+     * @param length
+     *            number of bytes of data that are sent
+     * @param reportId
+     *            of the report
+     * @return number of bytes written including the report ID, negative on error
+     */
+    public int write(byte[] data, int length, byte reportId);
+
+    /**
+     * Reads an input report, waiting at most the given time for one to arrive.
+     *
+     * @param data
+     *            buffer the report is read into
+     * @param timeoutMillis
+     *            maximum time to wait for a report
+     * @return number of bytes read, 0 if no report arrived in time and negative on error
+     */
+    public int read(byte[] data, int timeoutMillis);
+
+    /**
+     * Reads a feature report.
+     *
+     * @param data
+     *            buffer the report is read into, without the report ID
+     * @param reportId
+     *            of the report
+     * @return number of bytes read including the report ID, negative on error
+     */
+    public int getFeatureReport(byte[] data, byte reportId);
+
+    /**
+     * Sends a feature report.
+     *
+     * @param data
+     *            report without the report ID
+     * @param reportId
+     *            of the report
+     * @return number of bytes sent including the report ID, negative on error
+     */
+    public int sendFeatureReport(byte[] data, byte reportId);
+
+    public String getSerialNumber();
+}
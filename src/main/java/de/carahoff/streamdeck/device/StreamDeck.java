@@ -1,8 +1,12 @@
 package de.carahoff.streamdeck.device;
 
 import java.awt.Image;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import de.carahoff.streamdeck.event.KeyListener;
+import de.carahoff.streamdeck.util.ImageUtils;
+import de.carahoff.streamdeck.util.PixelData;
 
 public interface StreamDeck extends AutoCloseable {
 
@@ -57,6 +61,20 @@ public interface StreamDeck extends AutoCloseable {
      */
     public void setImage(int keyIndex, Image img);
 
+    /**
+     * Sets the image of the key at the given keyIndex to the given raw pixels, without going through
+     * java.awt.Image. The pixels may be reused once this method returns. By default the pixels are converted to a
+     * BufferedImage and set with {@link #setImage(int, Image)}.
+     * 
+     * @param keyIndex
+     *            of key that is to be set
+     * @param pixels
+     *            that are to be set
+     */
+    public default void setImage(int keyIndex, PixelData pixels) {
+        setImage(keyIndex, ImageUtils.toBufferedImage(pixels));
+    }
+
     /**
      * Sets all keys to display the given Image.
      * 
@@ -65,6 +83,44 @@ public interface StreamDeck extends AutoCloseable {
      */
     public void setImage(Image img);
 
+    /**
+     * Sets the images of several keys at once, e.g. to switch to another page of icons. The images are encoded
+     * before any of them is sent and then written back-to-back, so the keys change together instead of one after
+     * another. By default the images are set one after another with {@link #setImage(int, Image)}.
+     * 
+     * @param images
+     *            images by keyIndex
+     */
+    public default void setImages(Map<Integer, ? extends Image> images) {
+        for (Map.Entry<Integer, ? extends Image> entry : images.entrySet()) {
+            setImage(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Queues the given Image for the key at the given keyIndex and returns without waiting for the device. If the
+     * key still has an image queued, that image is replaced and only the most recent one is sent. By default the
+     * image is set synchronously with {@link #setImage(int, Image)} and a completed future is returned.
+     * 
+     * @param keyIndex
+     *            of key that is to be set
+     * @param img
+     *            that is to be set
+     * @return future that completes once the image, or an image queued after it for the same key, was sent, and
+     *         completes exceptionally if it could not be sent
+     */
+    public default CompletableFuture<Void> setImageAsync(int keyIndex, Image img) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            setImage(keyIndex, img);
+            future.complete(null);
+        }
+        catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
     /**
      * Sets the brightness of the StreamDeck to the given percentage from 0 - 100 %
      * 
@@ -72,4 +128,25 @@ public interface StreamDeck extends AutoCloseable {
      *            brightness in percent
      */
     public void setBrightness(int percentBrightness);
+
+    /**
+     * Queues the given brightness and returns without waiting for the device. If a brightness is still queued, it is
+     * replaced and only the most recent one is sent. By default the brightness is set synchronously with
+     * {@link #setBrightness(int)} and a completed future is returned.
+     * 
+     * @param percentBrightness
+     *            brightness in percent
+     * @return future that completes once the brightness, or a brightness queued after it, was sent
+     */
+    public default CompletableFuture<Void> setBrightnessAsync(int percentBrightness) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            setBrightness(percentBrightness);
+            future.complete(null);
+        }
+        catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
 }
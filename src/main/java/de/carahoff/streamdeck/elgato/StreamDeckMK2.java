@@ -6,7 +6,9 @@ import java.util.BitSet;
 import org.hid4java.HidDevice;
 
 import de.carahoff.streamdeck.device.BasicHidStreamDeck;
+import de.carahoff.streamdeck.device.HidTransport;
 import de.carahoff.streamdeck.util.ImageUtils;
+import de.carahoff.streamdeck.util.PixelData;
 
 public class StreamDeckMK2 extends BasicHidStreamDeck {
 
@@ -31,6 +33,10 @@ public class StreamDeckMK2 extends BasicHidStreamDeck {
         super(device);
     }
 
+    public StreamDeckMK2(HidTransport transport) {
+        super(transport);
+    }
+
     @Override
     public int getColumns() {
         return COLUMNS;
@@ -52,12 +58,12 @@ public class StreamDeckMK2 extends BasicHidStreamDeck {
     }
 
     @Override
-    protected int getDPI() {
+    public int getDPI() {
         return DPI;
     }
 
     @Override
-    protected int getPadding() {
+    public int getPadding() {
         return PADDING;
     }
 
@@ -108,10 +114,21 @@ public class StreamDeckMK2 extends BasicHidStreamDeck {
 
     @Override
     protected byte[] imagePageHeader(int pageIndex, int keyIndex, int payloadLength, boolean lastPage) {
-        byte lastPageByte = (byte) (lastPage ? 1 : 0);
-        return new byte[] { 0x02, 0x07, (byte) keyIndex, lastPageByte,
-                (byte) (payloadLength), (byte) (payloadLength >> 8),
-                (byte) (pageIndex), (byte) (pageIndex >> 8) };
+        byte[] header = new byte[getImagePageHeaderSize()];
+        imagePageHeader(header, pageIndex, keyIndex, payloadLength, lastPage);
+        return header;
+    }
+
+    @Override
+    protected void imagePageHeader(byte[] header, int pageIndex, int keyIndex, int payloadLength, boolean lastPage) {
+        header[0] = 0x02;
+        header[1] = 0x07;
+        header[2] = (byte) keyIndex;
+        header[3] = (byte) (lastPage ? 1 : 0);
+        header[4] = (byte) (payloadLength);
+        header[5] = (byte) (payloadLength >> 8);
+        header[6] = (byte) (pageIndex);
+        header[7] = (byte) (pageIndex >> 8);
     }
 
     @Override
@@ -124,8 +141,18 @@ public class StreamDeckMK2 extends BasicHidStreamDeck {
         return ImageUtils.flipHorizontallyAndVertically(img);
     }
 
+    @Override
+    protected byte[] toDeviceFormat(Image img) {
+        return rotateAndEncode(img);
+    }
+
+    @Override
+    protected byte[] toDeviceFormat(PixelData pixels) {
+        return rotateAndEncode(pixels);
+    }
+
     @Override
     protected byte[] toImageFormat(Image img) {
-        return ImageUtils.convertToJPGByteArray(img);
+        return getImageEncoder().encode(ImageUtils.toBufferedImage(img));
     }
 }
@@ -0,0 +1,178 @@
+package de.carahoff.streamdeck.elgato;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.BitSet;
+
+import org.hid4java.HidDevice;
+
+import de.carahoff.streamdeck.device.BasicHidStreamDeck;
+import de.carahoff.streamdeck.device.HidTransport;
+import de.carahoff.streamdeck.encoder.BmpEncoder;
+import de.carahoff.streamdeck.encoder.ImageEncoder;
+import de.carahoff.streamdeck.encoder.ImageFormat;
+import de.carahoff.streamdeck.util.ImageUtils;
+
+/**
+ * The StreamDeck Mini with 6 keys, including its second revision. Its keys take bitmaps that are rotated
+ * counterclockwise and flipped vertically.
+ */
+public class StreamDeckMini extends BasicHidStreamDeck {
+
+    private static final int COLUMNS = 3;
+    private static final int ROWS = 2;
+    private static final int KEYS = 6;
+    private static final int PIXELS = 80;
+    private static final int DPI = 138;
+    private static final int PADDING = 16;
+    private static final int IMAGE_PAGE_SIZE = 1024;
+    private static final int IMAGE_PAGE_HEADER_SIZE = 16;
+    private static final int FEATURE_REPORT_SIZE = 17;
+    private static final int FIRMWARE_OFFSET = 5;
+    private static final int KEY_STATE_OFFSET = 1;
+
+    private static final byte[] GET_FIRMWARE_COMMAND = new byte[] { 0x04 };
+    private static final byte[] SET_BRIGHTNESS_COMMAND = new byte[] { 0x05, 0x55, (byte) 0xaa, (byte) 0xd1, 0x01 };
+    private static final byte[] RESET_COMMAND = new byte[] { 0x0b, 0x63 };
+    private static final BitSet KEY_STATES = new BitSet(KEYS);
+    private static final BmpEncoder IMAGE_ENCODER = new BmpEncoder();
+
+    public StreamDeckMini(HidDevice device) {
+        super(device);
+    }
+
+    public StreamDeckMini(HidTransport transport) {
+        super(transport);
+    }
+
+    @Override
+    public int getColumns() {
+        return COLUMNS;
+    }
+
+    @Override
+    public int getRows() {
+        return ROWS;
+    }
+
+    @Override
+    public int getKeys() {
+        return KEYS;
+    }
+
+    @Override
+    public int getPixels() {
+        return PIXELS;
+    }
+
+    @Override
+    public int getDPI() {
+        return DPI;
+    }
+
+    @Override
+    public int getPadding() {
+        return PADDING;
+    }
+
+    @Override
+    protected int getImagePageSize() {
+        return IMAGE_PAGE_SIZE;
+    }
+
+    @Override
+    protected int getImagePageHeaderSize() {
+        return IMAGE_PAGE_HEADER_SIZE;
+    }
+
+    @Override
+    protected int getFeatureReportSize() {
+        return FEATURE_REPORT_SIZE;
+    }
+
+    @Override
+    protected int getFirmwareOffset() {
+        return FIRMWARE_OFFSET;
+    }
+
+    @Override
+    protected int getKeyStateOffset() {
+        return KEY_STATE_OFFSET;
+    }
+
+    @Override
+    protected byte[] getGetFirmwareCommand() {
+        return GET_FIRMWARE_COMMAND;
+    }
+
+    @Override
+    protected byte[] getSetBrightnessCommand() {
+        return SET_BRIGHTNESS_COMMAND;
+    }
+
+    @Override
+    protected byte[] getResetCommand() {
+        return RESET_COMMAND;
+    }
+
+    @Override
+    protected BitSet getKeyStates() {
+        return KEY_STATES;
+    }
+
+    @Override
+    protected ImageEncoder getDefaultImageEncoder() {
+        return IMAGE_ENCODER;
+    }
+
+    @Override
+    protected ImageFormat getImageFormat() {
+        return ImageFormat.BMP;
+    }
+
+    @Override
+    protected byte[] imagePageHeader(int pageIndex, int keyIndex, int payloadLength, boolean lastPage) {
+        byte[] header = new byte[getImagePageHeaderSize()];
+        imagePageHeader(header, pageIndex, keyIndex, payloadLength, lastPage);
+        return header;
+    }
+
+    @Override
+    protected void imagePageHeader(byte[] header, int pageIndex, int keyIndex, int payloadLength, boolean lastPage) {
+        header[0] = 0x02;
+        header[1] = 0x01;
+        header[2] = (byte) pageIndex;
+        header[3] = 0x00;
+        header[4] = (byte) (lastPage ? 1 : 0);
+        header[5] = (byte) (keyIndex + 1);
+    }
+
+    @Override
+    protected int translateKeyIndex(int index, int columns) {
+        return index;
+    }
+
+    @Override
+    protected Image flipImage(Image img) {
+        return ImageUtils.flipVertically(ImageUtils.rotateCounterclockwise(img));
+    }
+
+    /**
+     * Rotates and flips the image while it is copied into the bitmap, unless another encoder than a BmpEncoder was
+     * set.
+     */
+    @Override
+    protected byte[] toDeviceFormat(Image img) {
+        ImageEncoder encoder = getImageEncoder();
+        if (encoder instanceof BmpEncoder) {
+            BufferedImage image = img instanceof BufferedImage ? (BufferedImage) img : ImageUtils.toBufferedImage(img);
+            return ((BmpEncoder) encoder).encode(image, BmpEncoder.Orientation.TRANSPOSE);
+        }
+        return super.toDeviceFormat(img);
+    }
+
+    @Override
+    protected byte[] toImageFormat(Image img) {
+        return getImageEncoder().encode(ImageUtils.toBufferedImage(img));
+    }
+}
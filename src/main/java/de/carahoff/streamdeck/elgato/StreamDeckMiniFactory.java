@@ -0,0 +1,43 @@
+package de.carahoff.streamdeck.elgato;
+
+import org.hid4java.HidDevice;
+
+import de.carahoff.streamdeck.device.HidStreamDeckFactory;
+import de.carahoff.streamdeck.device.HidStreamDeckInfo;
+
+/**
+ * Creates StreamDeck Minis. Both revisions of the Mini share the protocol, {@link #getProductId()} returns the product
+ * ID of the first one.
+ */
+public class StreamDeckMiniFactory implements HidStreamDeckFactory {
+    public static final int VENDOR_ID_ELGATO = 0x0fd9;
+    public static final int PRODUCT_ID_STREAMDECK_MINI = 0x0063;
+    public static final int PRODUCT_ID_STREAMDECK_MINI_MK2 = 0x0090;
+
+    @Override
+    public int getVendorId() {
+        return VENDOR_ID_ELGATO;
+    }
+
+    @Override
+    public int getProductId() {
+        return PRODUCT_ID_STREAMDECK_MINI;
+    }
+
+    @Override
+    public boolean recognize(int vendorId, int productId) {
+        return (VENDOR_ID_ELGATO == vendorId
+                && (PRODUCT_ID_STREAMDECK_MINI == productId || PRODUCT_ID_STREAMDECK_MINI_MK2 == productId));
+    }
+
+    @Override
+    public HidStreamDeckInfo createStreamDeckInfo(HidDevice device) {
+        return new HidStreamDeckInfo(device, this);
+    }
+
+    @Override
+    public StreamDeckMini openAndCreateStreamDeck(HidDevice device) {
+        device.open();
+        return new StreamDeckMini(device);
+    }
+}
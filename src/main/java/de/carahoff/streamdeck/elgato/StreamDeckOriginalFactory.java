@@ -0,0 +1,37 @@
+package de.carahoff.streamdeck.elgato;
+
+import org.hid4java.HidDevice;
+
+import de.carahoff.streamdeck.device.HidStreamDeckFactory;
+import de.carahoff.streamdeck.device.HidStreamDeckInfo;
+
+public class StreamDeckOriginalFactory implements HidStreamDeckFactory {
+    public static final int VENDOR_ID_ELGATO = 0x0fd9;
+    public static final int PRODUCT_ID_STREAMDECK_ORIGINAL = 0x0060;
+
+    @Override
+    public int getVendorId() {
+        return VENDOR_ID_ELGATO;
+    }
+
+    @Override
+    public int getProductId() {
+        return PRODUCT_ID_STREAMDECK_ORIGINAL;
+    }
+
+    @Override
+    public boolean recognize(int vendorId, int productId) {
+        return (VENDOR_ID_ELGATO == vendorId && PRODUCT_ID_STREAMDECK_ORIGINAL == productId);
+    }
+
+    @Override
+    public HidStreamDeckInfo createStreamDeckInfo(HidDevice device) {
+        return new HidStreamDeckInfo(device, this);
+    }
+
+    @Override
+    public StreamDeckOriginal openAndCreateStreamDeck(HidDevice device) {
+        device.open();
+        return new StreamDeckOriginal(device);
+    }
+}
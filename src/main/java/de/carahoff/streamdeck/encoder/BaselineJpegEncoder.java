@@ -0,0 +1,525 @@
+package de.carahoff.streamdeck.encoder;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.Arrays;
+
+import de.carahoff.streamdeck.util.ImageUtils;
+
+/**
+ * Pure Java baseline JPEG encoder for small images such as key images. It writes a JFIF file with the standard
+ * quantization and Huffman tables of the JPEG specification, so the output is decodable by any JPEG decoder. All
+ * working buffers are kept per thread and only the returned array is allocated per image.
+ */
+public class BaselineJpegEncoder implements ImageEncoder {
+    public static final int DEFAULT_QUALITY = 75;
+
+    private static final int[] ZIGZAG = { 0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5, 12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21,
+            28, 35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51, 58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63 };
+
+    private static final int[] LUMA_QUANTIZATION = { 16, 11, 10, 16, 24, 40, 51, 61, 12, 12, 14, 19, 26, 58, 60, 55, 14, 13, 16, 24, 40, 57, 69, 56, 14, 17,
+            22, 29, 51, 87, 80, 62, 18, 22, 37, 56, 68, 109, 103, 77, 24, 35, 55, 64, 81, 104, 113, 92, 49, 64, 78, 87, 103, 121, 120, 101, 72, 92, 95, 98,
+            112, 100, 103, 99 };
+
+    private static final int[] CHROMA_QUANTIZATION = { 17, 18, 24, 47, 99, 99, 99, 99, 18, 21, 26, 66, 99, 99, 99, 99, 24, 26, 56, 99, 99, 99, 99, 99, 47,
+            66, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99 };
+
+    private static final int[] DC_LUMA_BITS = { 0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0 };
+    private static final int[] DC_CHROMA_BITS = { 0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0 };
+    private static final int[] DC_VALUES = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11 };
+
+    private static final int[] AC_LUMA_BITS = { 0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d };
+    private static final int[] AC_LUMA_VALUES = { 0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12, 0x21, 0x31, 0x41, 0x06, 0x13, 0x51, 0x61, 0x07, 0x22,
+            0x71, 0x14, 0x32, 0x81, 0x91, 0xa1, 0x08, 0x23, 0x42, 0xb1, 0xc1, 0x15, 0x52, 0xd1, 0xf0, 0x24, 0x33, 0x62, 0x72, 0x82, 0x09, 0x0a, 0x16, 0x17,
+            0x18, 0x19, 0x1a, 0x25, 0x26, 0x27, 0x28, 0x29, 0x2a, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49, 0x4a,
+            0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a,
+            0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7, 0xa8,
+            0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5,
+            0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe1, 0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf1, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8, 0xf9,
+            0xfa };
+
+    private static final int[] AC_CHROMA_BITS = { 0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 0x77 };
+    private static final int[] AC_CHROMA_VALUES = { 0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21, 0x31, 0x06, 0x12, 0x41, 0x51, 0x07, 0x61, 0x71, 0x13,
+            0x22, 0x32, 0x81, 0x08, 0x14, 0x42, 0x91, 0xa1, 0xb1, 0xc1, 0x09, 0x23, 0x33, 0x52, 0xf0, 0x15, 0x62, 0x72, 0xd1, 0x0a, 0x16, 0x24, 0x34, 0xe1,
+            0x25, 0xf1, 0x17, 0x18, 0x19, 0x1a, 0x26, 0x27, 0x28, 0x29, 0x2a, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49,
+            0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79,
+            0x7a, 0x82, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6,
+            0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3,
+            0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8, 0xf9,
+            0xfa };
+
+    private static final HuffmanTable DC_LUMA = new HuffmanTable(DC_LUMA_BITS, DC_VALUES);
+    private static final HuffmanTable DC_CHROMA = new HuffmanTable(DC_CHROMA_BITS, DC_VALUES);
+    private static final HuffmanTable AC_LUMA = new HuffmanTable(AC_LUMA_BITS, AC_LUMA_VALUES);
+    private static final HuffmanTable AC_CHROMA = new HuffmanTable(AC_CHROMA_BITS, AC_CHROMA_VALUES);
+
+    // JFIF color conversion per component value, the Y tables include the level shift by 128
+    private static final float[] Y_R = conversionTable(0.299f, -128f);
+    private static final float[] Y_G = conversionTable(0.587f, 0f);
+    private static final float[] Y_B = conversionTable(0.114f, 0f);
+    private static final float[] CB_R = conversionTable(-0.168736f, 0f);
+    private static final float[] CB_G = conversionTable(-0.331264f, 0f);
+    private static final float[] CB_B = conversionTable(0.5f, 0f);
+    private static final float[] CR_R = conversionTable(0.5f, 0f);
+    private static final float[] CR_G = conversionTable(-0.418688f, 0f);
+    private static final float[] CR_B = conversionTable(-0.081312f, 0f);
+
+    private static final double[] AAN_SCALE = { 1.0, 1.387039845, 1.306562965, 1.175875602, 1.0, 0.785694958, 0.541196100, 0.275899379 };
+
+    private final int quality;
+    private final ChromaSubsampling subsampling;
+    private final int[] lumaTable;
+    private final int[] chromaTable;
+    private final float[] lumaDivisors;
+    private final float[] chromaDivisors;
+    private final ThreadLocal<EncoderState> states = ThreadLocal.withInitial(EncoderState::new);
+
+    public BaselineJpegEncoder() {
+        this(DEFAULT_QUALITY, ChromaSubsampling.YUV_420);
+    }
+
+    /**
+     * @param quality
+     *            between 1 and 100, scaled like the IJG encoder and ImageIO do
+     * @param subsampling
+     *            of the color components
+     */
+    public BaselineJpegEncoder(int quality, ChromaSubsampling subsampling) {
+        if (quality < 1 || quality > 100) {
+            throw new IllegalArgumentException("Quality must be between 1 and 100");
+        }
+        this.quality = quality;
+        this.subsampling = subsampling;
+        this.lumaTable = scaleTable(LUMA_QUANTIZATION, quality);
+        this.chromaTable = scaleTable(CHROMA_QUANTIZATION, quality);
+        this.lumaDivisors = divisors(lumaTable);
+        this.chromaDivisors = divisors(chromaTable);
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    public ChromaSubsampling getSubsampling() {
+        return subsampling;
+    }
+
+    @Override
+    public String getFormatKey() {
+        return "jpeg-baseline-" + quality + "-" + subsampling;
+    }
+
+    @Override
+    public byte[] encode(BufferedImage image) {
+        EncoderState state = states.get();
+        state.prepare(image, subsampling);
+        state.out.reset();
+        writeHeaders(state.out, image.getWidth(), image.getHeight());
+
+        int hFactor = subsampling.getHorizontalFactor();
+        int vFactor = subsampling.getVerticalFactor();
+        int mcuWidth = 8 * hFactor;
+        int mcuHeight = 8 * vFactor;
+        int[] predictions = state.predictions;
+        Arrays.fill(predictions, 0);
+        for (int mcuY = 0; mcuY < state.paddedHeight; mcuY += mcuHeight) {
+            for (int mcuX = 0; mcuX < state.paddedWidth; mcuX += mcuWidth) {
+                for (int v = 0; v < vFactor; v++) {
+                    for (int h = 0; h < hFactor; h++) {
+                        state.loadBlock(state.y, mcuX + h * 8, mcuY + v * 8, 1, 1);
+                        predictions[0] = encodeBlock(state, lumaDivisors, predictions[0], DC_LUMA, AC_LUMA);
+                    }
+                }
+                state.loadBlock(state.cb, mcuX, mcuY, hFactor, vFactor);
+                predictions[1] = encodeBlock(state, chromaDivisors, predictions[1], DC_CHROMA, AC_CHROMA);
+                state.loadBlock(state.cr, mcuX, mcuY, hFactor, vFactor);
+                predictions[2] = encodeBlock(state, chromaDivisors, predictions[2], DC_CHROMA, AC_CHROMA);
+            }
+        }
+        state.out.flushBits();
+        state.out.write(0xff);
+        state.out.write(0xd9);
+        return state.out.toByteArray();
+    }
+
+    private void writeHeaders(JpegOutput out, int width, int height) {
+        // SOI and JFIF APP0
+        out.write(0xff);
+        out.write(0xd8);
+        out.writeMarker(0xe0, 16);
+        out.write('J');
+        out.write('F');
+        out.write('I');
+        out.write('F');
+        out.write(0);
+        out.write(1);
+        out.write(1);
+        out.write(0);
+        out.writeShort(1);
+        out.writeShort(1);
+        out.write(0);
+        out.write(0);
+
+        // Quantization tables in zigzag order
+        out.writeMarker(0xdb, 2 + 2 * 65);
+        out.write(0);
+        for (int i = 0; i < 64; i++) {
+            out.write(lumaTable[ZIGZAG[i]]);
+        }
+        out.write(1);
+        for (int i = 0; i < 64; i++) {
+            out.write(chromaTable[ZIGZAG[i]]);
+        }
+
+        // Baseline frame with Y, Cb and Cr
+        out.writeMarker(0xc0, 17);
+        out.write(8);
+        out.writeShort(height);
+        out.writeShort(width);
+        out.write(3);
+        out.write(1);
+        out.write(subsampling.getHorizontalFactor() << 4 | subsampling.getVerticalFactor());
+        out.write(0);
+        for (int component = 2; component <= 3; component++) {
+            out.write(component);
+            out.write(0x11);
+            out.write(1);
+        }
+
+        out.writeMarker(0xc4, 2 + DC_LUMA.length() + AC_LUMA.length() + DC_CHROMA.length() + AC_CHROMA.length());
+        DC_LUMA.write(out, 0x00);
+        AC_LUMA.write(out, 0x10);
+        DC_CHROMA.write(out, 0x01);
+        AC_CHROMA.write(out, 0x11);
+
+        out.writeMarker(0xda, 12);
+        out.write(3);
+        out.write(1);
+        out.write(0x00);
+        out.write(2);
+        out.write(0x11);
+        out.write(3);
+        out.write(0x11);
+        out.write(0);
+        out.write(63);
+        out.write(0);
+    }
+
+    /**
+     * Transforms, quantizes and Huffman codes the block loaded into the state.
+     *
+     * @return DC value of the block, the prediction for the next block of the component
+     */
+    private static int encodeBlock(EncoderState state, float[] divisors, int prediction, HuffmanTable dcTable, HuffmanTable acTable) {
+        float[] block = state.block;
+        forwardDct(block);
+        int[] coefficients = state.coefficients;
+        for (int i = 0; i < 64; i++) {
+            int natural = ZIGZAG[i];
+            int value = Math.round(block[natural] * divisors[natural]);
+            coefficients[i] = Math.max(-1023, Math.min(1023, value));
+        }
+
+        JpegOutput out = state.out;
+        int dc = coefficients[0];
+        int diff = dc - prediction;
+        int category = category(diff);
+        out.writeBits(dcTable.codes[category], dcTable.sizes[category]);
+        if (category > 0) {
+            out.writeBits(diff < 0 ? diff - 1 : diff, category);
+        }
+
+        int run = 0;
+        for (int i = 1; i < 64; i++) {
+            int value = coefficients[i];
+            if (value == 0) {
+                run++;
+                continue;
+            }
+            while (run > 15) {
+                out.writeBits(acTable.codes[0xf0], acTable.sizes[0xf0]);
+                run -= 16;
+            }
+            category = category(value);
+            int symbol = run << 4 | category;
+            out.writeBits(acTable.codes[symbol], acTable.sizes[symbol]);
+            out.writeBits(value < 0 ? value - 1 : value, category);
+            run = 0;
+        }
+        if (run > 0) {
+            out.writeBits(acTable.codes[0x00], acTable.sizes[0x00]);
+        }
+        return dc;
+    }
+
+    private static int category(int value) {
+        return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+    }
+
+    /**
+     * Separable floating point AAN forward DCT, as in jfdctflt.c of the IJG library. The output is scaled by the
+     * AAN factors, which the quantization divisors compensate.
+     */
+    private static void forwardDct(float[] data) {
+        for (int offset = 0; offset < 64; offset += 8) {
+            transform(data, offset, 1);
+        }
+        for (int offset = 0; offset < 8; offset++) {
+            transform(data, offset, 8);
+        }
+    }
+
+    private static void transform(float[] d, int o, int s) {
+        float tmp0 = d[o] + d[o + 7 * s];
+        float tmp7 = d[o] - d[o + 7 * s];
+        float tmp1 = d[o + s] + d[o + 6 * s];
+        float tmp6 = d[o + s] - d[o + 6 * s];
+        float tmp2 = d[o + 2 * s] + d[o + 5 * s];
+        float tmp5 = d[o + 2 * s] - d[o + 5 * s];
+        float tmp3 = d[o + 3 * s] + d[o + 4 * s];
+        float tmp4 = d[o + 3 * s] - d[o + 4 * s];
+
+        float tmp10 = tmp0 + tmp3;
+        float tmp13 = tmp0 - tmp3;
+        float tmp11 = tmp1 + tmp2;
+        float tmp12 = tmp1 - tmp2;
+
+        d[o] = tmp10 + tmp11;
+        d[o + 4 * s] = tmp10 - tmp11;
+
+        float z1 = (tmp12 + tmp13) * 0.707106781f;
+        d[o + 2 * s] = tmp13 + z1;
+        d[o + 6 * s] = tmp13 - z1;
+
+        tmp10 = tmp4 + tmp5;
+        tmp11 = tmp5 + tmp6;
+        tmp12 = tmp6 + tmp7;
+
+        float z5 = (tmp10 - tmp12) * 0.382683433f;
+        float z2 = 0.541196100f * tmp10 + z5;
+        float z4 = 1.306562965f * tmp12 + z5;
+        float z3 = tmp11 * 0.707106781f;
+
+        float z11 = tmp7 + z3;
+        float z13 = tmp7 - z3;
+
+        d[o + 5 * s] = z13 + z2;
+        d[o + 3 * s] = z13 - z2;
+        d[o + s] = z11 + z4;
+        d[o + 7 * s] = z11 - z4;
+    }
+
+    private static float[] conversionTable(float factor, float offset) {
+        float[] table = new float[256];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = factor * i + offset;
+        }
+        return table;
+    }
+
+    private static int[] scaleTable(int[] base, int quality) {
+        int scale = quality < 50 ? 5000 / quality : 200 - quality * 2;
+        int[] table = new int[64];
+        for (int i = 0; i < 64; i++) {
+            table[i] = Math.max(1, Math.min(255, (base[i] * scale + 50) / 100));
+        }
+        return table;
+    }
+
+    private static float[] divisors(int[] table) {
+        float[] divisors = new float[64];
+        for (int row = 0; row < 8; row++) {
+            for (int column = 0; column < 8; column++) {
+                divisors[row * 8 + column] = (float) (1.0 / (table[row * 8 + column] * AAN_SCALE[row] * AAN_SCALE[column] * 8.0));
+            }
+        }
+        return divisors;
+    }
+
+    private static final class HuffmanTable {
+        private final int[] bits;
+        private final int[] values;
+        private final int[] codes = new int[256];
+        private final int[] sizes = new int[256];
+
+        private HuffmanTable(int[] bits, int[] values) {
+            this.bits = bits;
+            this.values = values;
+            int code = 0;
+            int k = 0;
+            for (int length = 1; length <= 16; length++) {
+                for (int i = 0; i < bits[length - 1]; i++) {
+                    codes[values[k]] = code;
+                    sizes[values[k]] = length;
+                    code++;
+                    k++;
+                }
+                code <<= 1;
+            }
+        }
+
+        private int length() {
+            return 1 + 16 + values.length;
+        }
+
+        private void write(JpegOutput out, int classAndId) {
+            out.write(classAndId);
+            for (int count : bits) {
+                out.write(count);
+            }
+            for (int value : values) {
+                out.write(value);
+            }
+        }
+    }
+
+    /**
+     * Growable output buffer with a bit writer that stuffs a zero byte after every 0xFF of entropy coded data.
+     */
+    private static final class JpegOutput {
+        private byte[] buffer = new byte[8 * 1024];
+        private int length;
+        private int bitBuffer;
+        private int bitCount;
+
+        private void reset() {
+            length = 0;
+            bitBuffer = 0;
+            bitCount = 0;
+        }
+
+        private void write(int value) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            buffer[length++] = (byte) value;
+        }
+
+        private void writeShort(int value) {
+            write(value >> 8);
+            write(value);
+        }
+
+        private void writeMarker(int marker, int segmentLength) {
+            write(0xff);
+            write(marker);
+            writeShort(segmentLength);
+        }
+
+        private void writeBits(int value, int count) {
+            bitBuffer = bitBuffer << count | (value & ((1 << count) - 1));
+            bitCount += count;
+            while (bitCount >= 8) {
+                int b = (bitBuffer >> (bitCount - 8)) & 0xff;
+                write(b);
+                if (b == 0xff) {
+                    write(0);
+                }
+                bitCount -= 8;
+            }
+        }
+
+        private void flushBits() {
+            if (bitCount > 0) {
+                writeBits(0x7f, 8 - bitCount);
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, length);
+        }
+    }
+
+    /**
+     * Per thread color planes, block buffers and output buffer. The planes are padded to whole MCUs by repeating the
+     * last row and column.
+     */
+    private static final class EncoderState {
+        private final JpegOutput out = new JpegOutput();
+        private final float[] block = new float[64];
+        private final int[] coefficients = new int[64];
+        private final int[] predictions = new int[3];
+        private byte[] row = new byte[0];
+        private float[] y = new float[0];
+        private float[] cb = new float[0];
+        private float[] cr = new float[0];
+        private int paddedWidth;
+        private int paddedHeight;
+
+        private void prepare(BufferedImage image, ChromaSubsampling subsampling) {
+            BufferedImage source = ImageUtils.toBufferedImage(image);
+            int width = source.getWidth();
+            int height = source.getHeight();
+            int mcuWidth = 8 * subsampling.getHorizontalFactor();
+            int mcuHeight = 8 * subsampling.getVerticalFactor();
+            paddedWidth = (width + mcuWidth - 1) / mcuWidth * mcuWidth;
+            paddedHeight = (height + mcuHeight - 1) / mcuHeight * mcuHeight;
+            int size = paddedWidth * paddedHeight;
+            if (y.length < size) {
+                y = new float[size];
+                cb = new float[size];
+                cr = new float[size];
+            }
+            if (row.length < width * 3) {
+                row = new byte[width * 3];
+            }
+
+            // Data elements of a BGR raster are returned in band order R, G, B
+            Raster raster = source.getRaster();
+            for (int py = 0; py < paddedHeight; py++) {
+                if (py < height) {
+                    raster.getDataElements(0, py, width, 1, row);
+                }
+                int rowOffset = py * paddedWidth;
+                if (py >= height) {
+                    System.arraycopy(y, rowOffset - paddedWidth, y, rowOffset, paddedWidth);
+                    System.arraycopy(cb, rowOffset - paddedWidth, cb, rowOffset, paddedWidth);
+                    System.arraycopy(cr, rowOffset - paddedWidth, cr, rowOffset, paddedWidth);
+                    continue;
+                }
+                for (int px = 0, sx = 0; px < width; px++, sx += 3) {
+                    int r = row[sx] & 0xff;
+                    int g = row[sx + 1] & 0xff;
+                    int b = row[sx + 2] & 0xff;
+                    int i = rowOffset + px;
+                    y[i] = Y_R[r] + Y_G[g] + Y_B[b];
+                    cb[i] = CB_R[r] + CB_G[g] + CB_B[b];
+                    cr[i] = CR_R[r] + CR_G[g] + CR_B[b];
+                }
+                int last = rowOffset + width - 1;
+                for (int i = last + 1; i < rowOffset + paddedWidth; i++) {
+                    y[i] = y[last];
+                    cb[i] = cb[last];
+                    cr[i] = cr[last];
+                }
+            }
+        }
+
+        /**
+         * Loads the 8x8 block at the given position into the block buffer, averaging hFactor x vFactor samples per
+         * block sample.
+         */
+        private void loadBlock(float[] plane, int blockX, int blockY, int hFactor, int vFactor) {
+            if (hFactor == 1 && vFactor == 1) {
+                for (int row = 0; row < 8; row++) {
+                    System.arraycopy(plane, (blockY + row) * paddedWidth + blockX, block, row * 8, 8);
+                }
+                return;
+            }
+            float scale = 1f / (hFactor * vFactor);
+            for (int row = 0; row < 8; row++) {
+                for (int column = 0; column < 8; column++) {
+                    float sum = 0;
+                    int start = (blockY + row * vFactor) * paddedWidth + blockX + column * hFactor;
+                    for (int v = 0; v < vFactor; v++) {
+                        for (int h = 0; h < hFactor; h++) {
+                            sum += plane[start + v * paddedWidth + h];
+                        }
+                    }
+                    block[row * 8 + column] = sum * scale;
+                }
+            }
+        }
+    }
+}
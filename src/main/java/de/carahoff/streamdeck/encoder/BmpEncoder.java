@@ -0,0 +1,205 @@
+package de.carahoff.streamdeck.encoder;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+
+/**
+ * Writes images as uncompressed 24 bit bitmaps, the key image format of the original StreamDeck and the Mini. Pixels
+ * of BGR and INT RGB images are copied from the raster straight into the bitmap rows, already in blue, green, red
+ * order and bottom-up, and the image can be flipped or rotated in the same pass. The 54 byte header only depends on
+ * the image size and is created once per size.
+ */
+public class BmpEncoder implements ImageEncoder {
+    private static final int HEADER_SIZE = 54;
+    private static final int DIB_HEADER_SIZE = 40;
+    // 96 DPI, as written by the bitmap writer of the reference drivers
+    private static final int PIXELS_PER_METER = 3780;
+
+    /**
+     * Flip or rotation applied while the image is copied into the bitmap.
+     */
+    public enum Orientation {
+        NONE,
+        FLIP_HORIZONTALLY,
+        ROTATE_180,
+        ROTATE_COUNTERCLOCKWISE,
+        ROTATE_CLOCKWISE,
+        /** Rotates counterclockwise and then flips vertically, i.e. mirrors the image along its main diagonal */
+        TRANSPOSE
+    }
+
+    private volatile Header header;
+
+    /**
+     * Writes the image as bitmap as it is.
+     *
+     * @param image
+     *            that is to be encoded, already flipped or rotated as the device expects
+     * @return bitmap bytes including the header
+     */
+    @Override
+    public byte[] encode(BufferedImage image) {
+        return encode(image, Orientation.NONE);
+    }
+
+    /**
+     * Writes the image as bitmap, flipping or rotating it while it is copied. Transparent pixels are composed onto
+     * black.
+     *
+     * @param image
+     *            that is to be encoded
+     * @param orientation
+     *            flip or rotation applied to the image
+     * @return bitmap bytes including the header
+     */
+    public byte[] encode(BufferedImage image, Orientation orientation) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean quarterTurn = orientation == Orientation.ROTATE_COUNTERCLOCKWISE || orientation == Orientation.ROTATE_CLOCKWISE
+                || orientation == Orientation.TRANSPOSE;
+        int targetWidth = quarterTurn ? height : width;
+        int targetHeight = quarterTurn ? width : height;
+        Header header = header(targetWidth, targetHeight);
+        byte[] bitmap = new byte[header.fileSize];
+        System.arraycopy(header.bytes, 0, bitmap, 0, HEADER_SIZE);
+        int rowSize = header.rowSize;
+
+        // For every source row the offset of its first pixel in the bitmap and the distance to the next pixel. The
+        // bitmap stores the bottom row first.
+        int step;
+        int firstRowStart;
+        int rowStep;
+        switch (orientation) {
+            case FLIP_HORIZONTALLY:
+                step = -3;
+                firstRowStart = HEADER_SIZE + (height - 1) * rowSize + (width - 1) * 3;
+                rowStep = -rowSize;
+                break;
+            case ROTATE_180:
+                step = -3;
+                firstRowStart = HEADER_SIZE + (width - 1) * 3;
+                rowStep = rowSize;
+                break;
+            case ROTATE_COUNTERCLOCKWISE:
+                step = rowSize;
+                firstRowStart = HEADER_SIZE;
+                rowStep = 3;
+                break;
+            case ROTATE_CLOCKWISE:
+                step = -rowSize;
+                firstRowStart = HEADER_SIZE + (width - 1) * rowSize + (height - 1) * 3;
+                rowStep = -3;
+                break;
+            case TRANSPOSE:
+                step = -rowSize;
+                firstRowStart = HEADER_SIZE + (width - 1) * rowSize;
+                rowStep = 3;
+                break;
+            default:
+                step = 3;
+                firstRowStart = HEADER_SIZE + (height - 1) * rowSize;
+                rowStep = -rowSize;
+        }
+
+        Raster raster = image.getRaster();
+        int type = image.getType();
+        if (type == BufferedImage.TYPE_3BYTE_BGR) {
+            // Data elements are returned in band order R, G, B
+            byte[] row = new byte[width * 3];
+            for (int y = 0; y < height; y++) {
+                raster.getDataElements(0, y, width, 1, row);
+                int out = firstRowStart + y * rowStep;
+                for (int x = 0; x < row.length; x += 3) {
+                    bitmap[out] = row[x + 2];
+                    bitmap[out + 1] = row[x + 1];
+                    bitmap[out + 2] = row[x];
+                    out += step;
+                }
+            }
+            return bitmap;
+        }
+
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB) {
+            // Other types are converted by drawing them, as ImageUtils.toBufferedImage does
+            BufferedImage bgrImage = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+            Graphics2D g2d = bgrImage.createGraphics();
+            g2d.drawImage(image, 0, 0, null);
+            g2d.dispose();
+            return encode(bgrImage, orientation);
+        }
+
+        boolean alpha = type == BufferedImage.TYPE_INT_ARGB;
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            raster.getDataElements(0, y, width, 1, row);
+            int out = firstRowStart + y * rowStep;
+            for (int x = 0; x < width; x++) {
+                int pixel = row[x];
+                int r = (pixel >> 16) & 0xff;
+                int g = (pixel >> 8) & 0xff;
+                int b = pixel & 0xff;
+                if (alpha) {
+                    int a = pixel >>> 24;
+                    r = (r * a + 127) / 255;
+                    g = (g * a + 127) / 255;
+                    b = (b * a + 127) / 255;
+                }
+                bitmap[out] = (byte) b;
+                bitmap[out + 1] = (byte) g;
+                bitmap[out + 2] = (byte) r;
+                out += step;
+            }
+        }
+        return bitmap;
+    }
+
+    @Override
+    public String getFormatKey() {
+        return "bmp-24-96dpi";
+    }
+
+    private Header header(int width, int height) {
+        Header current = header;
+        if (current == null || current.width != width || current.height != height) {
+            current = new Header(width, height);
+            header = current;
+        }
+        return current;
+    }
+
+    private static final class Header {
+        private final int width;
+        private final int height;
+        private final int rowSize;
+        private final int fileSize;
+        private final byte[] bytes = new byte[HEADER_SIZE];
+
+        private Header(int width, int height) {
+            this.width = width;
+            this.height = height;
+            // Rows are padded to a multiple of four bytes
+            this.rowSize = (width * 3 + 3) & ~3;
+            this.fileSize = HEADER_SIZE + rowSize * height;
+            bytes[0] = 'B';
+            bytes[1] = 'M';
+            putInt(2, fileSize);
+            putInt(10, HEADER_SIZE);
+            putInt(14, DIB_HEADER_SIZE);
+            putInt(18, width);
+            putInt(22, height);
+            bytes[26] = 1;
+            bytes[28] = 24;
+            putInt(34, rowSize * height);
+            putInt(38, PIXELS_PER_METER);
+            putInt(42, PIXELS_PER_METER);
+        }
+
+        private void putInt(int offset, int value) {
+            bytes[offset] = (byte) value;
+            bytes[offset + 1] = (byte) (value >> 8);
+            bytes[offset + 2] = (byte) (value >> 16);
+            bytes[offset + 3] = (byte) (value >> 24);
+        }
+    }
+}
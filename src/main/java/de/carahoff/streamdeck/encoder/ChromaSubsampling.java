@@ -0,0 +1,39 @@
+package de.carahoff.streamdeck.encoder;
+
+/**
+ * Resolution of the color components of a JPEG relative to its brightness component.
+ */
+public enum ChromaSubsampling {
+    /** Full color resolution */
+    YUV_444(1, 1),
+    /** Half horizontal color resolution */
+    YUV_422(2, 1),
+    /** Half horizontal and vertical color resolution, the default of most encoders */
+    YUV_420(2, 2);
+
+    private final int horizontalFactor;
+    private final int verticalFactor;
+
+    private ChromaSubsampling(int horizontalFactor, int verticalFactor) {
+        this.horizontalFactor = horizontalFactor;
+        this.verticalFactor = verticalFactor;
+    }
+
+    /**
+     * Returns the horizontal sampling factor of the brightness component, the color components use 1.
+     * 
+     * @return horizontal sampling factor
+     */
+    public int getHorizontalFactor() {
+        return horizontalFactor;
+    }
+
+    /**
+     * Returns the vertical sampling factor of the brightness component, the color components use 1.
+     * 
+     * @return vertical sampling factor
+     */
+    public int getVerticalFactor() {
+        return verticalFactor;
+    }
+}
@@ -0,0 +1,27 @@
+package de.carahoff.streamdeck.encoder;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Encodes key images into the image format of a StreamDeck. Implementations must be thread safe, the same encoder is
+ * used by every thread that prepares images for a deck.
+ */
+public interface ImageEncoder {
+
+    /**
+     * Encodes the given image.
+     * 
+     * @param image
+     *            that is to be encoded, already flipped or rotated as the device expects
+     * @return encoded image, owned by the caller
+     */
+    public byte[] encode(BufferedImage image);
+
+    /**
+     * Identifies the encoder and its settings. Encoders that produce identical bytes for the same image must return
+     * the same key, as encoded images are cached under it.
+     * 
+     * @return key of the encoder settings
+     */
+    public String getFormatKey();
+}
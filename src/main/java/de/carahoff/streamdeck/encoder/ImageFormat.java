@@ -0,0 +1,100 @@
+package de.carahoff.streamdeck.encoder;
+
+import java.awt.Dimension;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Image formats StreamDecks accept for their keys. An encoded image can be checked against the format, so images that
+ * were encoded elsewhere can be sent without decoding them.
+ */
+public enum ImageFormat {
+    /**
+     * Baseline JPEG as written by {@link ImageIOJpegEncoder} and {@link BaselineJpegEncoder}.
+     */
+    JPEG {
+        @Override
+        public Dimension readDimensions(ByteBuffer image) {
+            int position = image.position();
+            int limit = image.limit();
+            if (limit - position < 4 || (image.get(position) & 0xff) != 0xff || (image.get(position + 1) & 0xff) != 0xd8) {
+                throw new IllegalArgumentException("Supplied image is not a JPEG");
+            }
+            position += 2;
+            while (position + 4 <= limit) {
+                if ((image.get(position) & 0xff) != 0xff) {
+                    throw new IllegalArgumentException("Supplied JPEG is corrupt");
+                }
+                int marker = image.get(position + 1) & 0xff;
+                if (marker == 0xff) {
+                    // Fill byte before a marker
+                    position++;
+                    continue;
+                }
+                if (marker == 0x01 || (marker >= 0xd0 && marker <= 0xd7)) {
+                    position += 2;
+                    continue;
+                }
+                if (marker == 0xd9 || marker == 0xda) {
+                    // End of image or start of scan data before any frame header
+                    break;
+                }
+                int length = (image.get(position + 2) & 0xff) << 8 | (image.get(position + 3) & 0xff);
+                if (length < 2 || position + 2 + length > limit) {
+                    throw new IllegalArgumentException("Supplied JPEG is corrupt");
+                }
+                if (marker == 0xc0 || marker == 0xc1) {
+                    if (length < 7) {
+                        throw new IllegalArgumentException("Supplied JPEG is corrupt");
+                    }
+                    int height = (image.get(position + 5) & 0xff) << 8 | (image.get(position + 6) & 0xff);
+                    int width = (image.get(position + 7) & 0xff) << 8 | (image.get(position + 8) & 0xff);
+                    return new Dimension(width, height);
+                }
+                if (marker >= 0xc2 && marker <= 0xcf && marker != 0xc4 && marker != 0xc8 && marker != 0xcc) {
+                    throw new IllegalArgumentException("Supplied JPEG must be a baseline JPEG");
+                }
+                position += 2 + length;
+            }
+            throw new IllegalArgumentException("Supplied JPEG has no frame header");
+        }
+    },
+    /**
+     * Uncompressed 24 bit bitmap as written by {@link BmpEncoder}.
+     */
+    BMP {
+        @Override
+        public Dimension readDimensions(ByteBuffer image) {
+            int position = image.position();
+            if (image.remaining() < 54 || image.get(position) != 'B' || image.get(position + 1) != 'M') {
+                throw new IllegalArgumentException("Supplied image is not a bitmap");
+            }
+            ByteBuffer header = image.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            int width = header.getInt(position + 18);
+            int height = Math.abs(header.getInt(position + 22));
+            int bitsPerPixel = header.getShort(position + 28);
+            int compression = header.getInt(position + 30);
+            if (bitsPerPixel != 24 || compression != 0) {
+                throw new IllegalArgumentException("Supplied bitmap must be an uncompressed 24 bit bitmap");
+            }
+            int dataOffset = header.getInt(position + 10);
+            long dataSize = (long) ((width * 3 + 3) & ~3) * height;
+            if (width < 0 || dataOffset < 54 || dataOffset + dataSize > image.remaining()) {
+                throw new IllegalArgumentException("Supplied bitmap is corrupt");
+            }
+            return new Dimension(width, height);
+        }
+    };
+
+    /**
+     * Reads the dimensions of the encoded image between position and limit of the given buffer, without changing
+     * the buffer.
+     *
+     * @param image
+     *            encoded image
+     * @return width and height of the image
+     * @throws IllegalArgumentException
+     *             if the image is not a valid image of this format
+     */
+    public abstract Dimension readDimensions(ByteBuffer image);
+}
@@ -0,0 +1,190 @@
+package de.carahoff.streamdeck.encoder;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.w3c.dom.Node;
+
+/**
+ * JPEG encoder based on the ImageIO JPEG writer. ImageWriters are kept in a small pool together with their write
+ * parameters and output buffer, so encoding neither looks up a writer in the service registry nor grows a new buffer
+ * per image. The pool holds at most one idle writer per processor, writers beyond that are disposed after use.
+ * Closing the encoder disposes the pooled writers.
+ */
+public class ImageIOJpegEncoder implements ImageEncoder, AutoCloseable {
+    public static final float DEFAULT_QUALITY = 0.75f;
+    /** Encoder with the settings ImageIO.write uses for JPEGs */
+    public static final ImageIOJpegEncoder DEFAULT = new ImageIOJpegEncoder(DEFAULT_QUALITY, ChromaSubsampling.YUV_420);
+
+    private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+
+    private final float quality;
+    private final ChromaSubsampling subsampling;
+    private final int maxIdleWriters = Runtime.getRuntime().availableProcessors();
+    private final ConcurrentLinkedDeque<WriterState> idleWriters = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleWriterCount = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * @param quality
+     *            between 0 and 1
+     * @param subsampling
+     *            of the color components
+     */
+    public ImageIOJpegEncoder(float quality, ChromaSubsampling subsampling) {
+        if (quality < 0 || quality > 1) {
+            throw new IllegalArgumentException("Quality must be between 0 and 1");
+        }
+        this.quality = quality;
+        this.subsampling = subsampling;
+    }
+
+    public float getQuality() {
+        return quality;
+    }
+
+    public ChromaSubsampling getSubsampling() {
+        return subsampling;
+    }
+
+    @Override
+    public byte[] encode(BufferedImage image) {
+        WriterState state = acquire();
+        try {
+            state.output.reset();
+            try (ImageOutputStream imageOutputStream = new MemoryCacheImageOutputStream(state.output)) {
+                state.writer.setOutput(imageOutputStream);
+                state.writer.write(null, new IIOImage(image, null, state.metadataFor(image)), state.param);
+            }
+            catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+            finally {
+                state.writer.setOutput(null);
+            }
+            return state.output.toByteArray();
+        }
+        finally {
+            release(state);
+        }
+    }
+
+    /**
+     * Disposes the pooled ImageWriters. The encoder can still be used afterwards, but every image then gets a new
+     * writer that is disposed right after.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        WriterState state;
+        while ((state = idleWriters.pollFirst()) != null) {
+            idleWriterCount.decrementAndGet();
+            state.writer.dispose();
+        }
+    }
+
+    private WriterState acquire() {
+        WriterState state = idleWriters.pollFirst();
+        if (state == null) {
+            return new WriterState();
+        }
+        idleWriterCount.decrementAndGet();
+        return state;
+    }
+
+    private void release(WriterState state) {
+        if (idleWriterCount.incrementAndGet() <= maxIdleWriters && !closed) {
+            idleWriters.offerFirst(state);
+            if (closed) {
+                // close() may have drained the pool before the writer was returned
+                close();
+            }
+            return;
+        }
+        idleWriterCount.decrementAndGet();
+        state.writer.dispose();
+    }
+
+    @Override
+    public String getFormatKey() {
+        return "jpeg-imageio-" + quality + "-" + subsampling;
+    }
+
+    private final class WriterState {
+        private final ImageWriter writer;
+        private final ImageWriteParam param;
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream(16 * 1024);
+        private int metadataImageType = -1;
+        private IIOMetadata metadata;
+
+        private WriterState() {
+            Iterator<ImageWriter> imageWriters = ImageIO.getImageWritersByFormatName("jpeg");
+            if (!imageWriters.hasNext()) {
+                throw new IllegalStateException("No JPEG writer available");
+            }
+            writer = imageWriters.next();
+            param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+        }
+
+        /**
+         * Returns the metadata carrying the sampling factors. It only depends on the image type, key images of a
+         * deck all have the same type so it is built once per writer.
+         */
+        private IIOMetadata metadataFor(BufferedImage image) {
+            if (metadata != null && metadataImageType == image.getType() && image.getType() != BufferedImage.TYPE_CUSTOM) {
+                return metadata;
+            }
+            IIOMetadata imageMetadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), param);
+            try {
+                IIOMetadataNode tree = (IIOMetadataNode) imageMetadata.getAsTree(JPEG_METADATA_FORMAT);
+                IIOMetadataNode sof = find(tree, "sof");
+                if (sof != null && sof.getLength() == 3) {
+                    IIOMetadataNode luma = (IIOMetadataNode) sof.item(0);
+                    luma.setAttribute("HsamplingFactor", Integer.toString(subsampling.getHorizontalFactor()));
+                    luma.setAttribute("VsamplingFactor", Integer.toString(subsampling.getVerticalFactor()));
+                    for (int i = 1; i < 3; i++) {
+                        IIOMetadataNode chroma = (IIOMetadataNode) sof.item(i);
+                        chroma.setAttribute("HsamplingFactor", "1");
+                        chroma.setAttribute("VsamplingFactor", "1");
+                    }
+                    imageMetadata.setFromTree(JPEG_METADATA_FORMAT, tree);
+                }
+            }
+            catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+            metadata = imageMetadata;
+            metadataImageType = image.getType();
+            return metadata;
+        }
+    }
+
+    private static IIOMetadataNode find(Node node, String name) {
+        if (name.equals(node.getNodeName())) {
+            return (IIOMetadataNode) node;
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            IIOMetadataNode found = find(child, name);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+}
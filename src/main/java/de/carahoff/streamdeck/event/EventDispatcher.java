@@ -0,0 +1,319 @@
+package de.carahoff.streamdeck.event;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.LongConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.carahoff.streamdeck.util.Histogram;
+import de.carahoff.streamdeck.util.ThreadSupport;
+
+/**
+ * Delivers events to listeners on an executor. Every listener has its own bounded queue that is drained by at most
+ * one task at a time, so each listener receives events in the order they were dispatched, while a slow listener does
+ * not hold up the others. If the executor rejects a drain, the events queued for that listener are dropped.
+ *
+ * @param <L>
+ *            type of the listeners
+ * @param <E>
+ *            type of the events
+ */
+public class EventDispatcher<L, E> implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final Logger LOGGER = Logger.getLogger(EventDispatcher.class.getName());
+
+    public enum OverflowPolicy {
+        /** Discards the oldest queued event of the listener to make room */
+        DROP_OLDEST,
+        /** Discards the event that is dispatched */
+        DROP_NEWEST,
+        /** Blocks the dispatching thread until the listener has caught up */
+        BLOCK;
+    }
+
+    private final BiConsumer<L, E> delivery;
+    private final Map<L, ListenerQueue> queues = new ConcurrentHashMap<>();
+    private final ExecutorService defaultExecutor = ThreadSupport.newTaskExecutor();
+    private volatile Executor executor = defaultExecutor;
+    // Executor created by useVirtualThreads(), shut down when it is replaced or the dispatcher is closed
+    private ExecutorService ownExecutor;
+    private volatile int capacity = DEFAULT_CAPACITY;
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private volatile LongConsumer latencyRecorder;
+
+    public EventDispatcher(BiConsumer<L, E> delivery) {
+        this.delivery = delivery;
+    }
+
+    public void addListener(L listener) {
+        queues.putIfAbsent(listener, new ListenerQueue(listener));
+    }
+
+    public void removeListener(L listener) {
+        queues.remove(listener);
+    }
+
+    public boolean hasListeners() {
+        return !queues.isEmpty();
+    }
+
+    public void dispatch(E event) {
+        for (ListenerQueue queue : queues.values()) {
+            queue.offer(event);
+        }
+    }
+
+    /**
+     * Sets the maximum number of events queued per listener. Applies to events dispatched afterwards.
+     *
+     * @param capacity
+     *            per listener
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least one event");
+        }
+        this.capacity = capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Sets the executor listeners are called on. The executor is not shut down by this dispatcher.
+     *
+     * @param executor
+     *            to deliver events on, null restores the default thread pool
+     */
+    public void setExecutor(Executor executor) {
+        replaceExecutor(executor == null ? defaultExecutor : executor, null);
+    }
+
+    /**
+     * Delivers events on virtual threads, one per queue drain. Dispatchers created while
+     * {@link ThreadSupport#isVirtualThreads()} is true do so by default. Before Java 21 a thread pool is used instead.
+     * The executor is shut down when another one is set or the dispatcher is closed.
+     */
+    public void useVirtualThreads() {
+        ExecutorService virtualExecutor = ThreadSupport.newVirtualThreadPerTaskExecutor();
+        replaceExecutor(virtualExecutor, virtualExecutor);
+    }
+
+    private void replaceExecutor(Executor executor, ExecutorService ownExecutor) {
+        ExecutorService previous;
+        synchronized (this) {
+            previous = this.ownExecutor;
+            this.ownExecutor = ownExecutor;
+            this.executor = executor;
+        }
+        // Drains already running finish, drains rejected by the old executor are retried on the new one
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    /**
+     * Sets a recorder that receives the nanoseconds between dispatching an event and any listener receiving it, in
+     * addition to the histogram of each listener.
+     *
+     * @param latencyRecorder
+     *            to record latencies with, null to record them per listener only
+     */
+    public void setLatencyRecorder(LongConsumer latencyRecorder) {
+        this.latencyRecorder = latencyRecorder;
+    }
+
+    /**
+     * Returns the number of events queued for the given listener.
+     *
+     * @param listener
+     *            whose queue is inspected
+     * @return queued events, 0 for unknown listeners
+     */
+    public int getQueueDepth(L listener) {
+        ListenerQueue queue = queues.get(listener);
+        if (queue == null) {
+            return 0;
+        }
+        queue.lock.lock();
+        try {
+            return queue.events.size();
+        }
+        finally {
+            queue.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the histogram of nanoseconds between dispatching an event and the given listener receiving it.
+     *
+     * @param listener
+     *            whose latency is requested
+     * @return latency histogram or null for unknown listeners
+     */
+    public Histogram getLatencyHistogram(L listener) {
+        ListenerQueue queue = queues.get(listener);
+        return queue == null ? null : queue.latency;
+    }
+
+    public long getDroppedEvents(L listener) {
+        ListenerQueue queue = queues.get(listener);
+        return queue == null ? 0 : queue.dropped.get();
+    }
+
+    @Override
+    public void close() {
+        queues.clear();
+        defaultExecutor.shutdown();
+        ExecutorService previous;
+        synchronized (this) {
+            previous = ownExecutor;
+            ownExecutor = null;
+        }
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    private static final class QueuedEvent<E> {
+        private final E event;
+        private final long dispatchNanos;
+
+        private QueuedEvent(E event, long dispatchNanos) {
+            this.event = event;
+            this.dispatchNanos = dispatchNanos;
+        }
+    }
+
+    private final class ListenerQueue implements Runnable {
+        private final L listener;
+        // Guards events and draining. A lock instead of a monitor, so a virtual thread blocked by the BLOCK policy
+        // does not pin its carrier thread
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notFull = lock.newCondition();
+        private final ArrayDeque<QueuedEvent<E>> events = new ArrayDeque<>();
+        private final Histogram latency = new Histogram();
+        private final AtomicLong dropped = new AtomicLong();
+        private boolean draining;
+
+        private ListenerQueue(L listener) {
+            this.listener = listener;
+        }
+
+        private void offer(E event) {
+            lock.lock();
+            try {
+                while (events.size() >= capacity) {
+                    OverflowPolicy policy = overflowPolicy;
+                    if (policy == OverflowPolicy.DROP_NEWEST) {
+                        dropped.incrementAndGet();
+                        return;
+                    }
+                    if (policy == OverflowPolicy.DROP_OLDEST) {
+                        events.poll();
+                        dropped.incrementAndGet();
+                        continue;
+                    }
+                    try {
+                        notFull.await();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        dropped.incrementAndGet();
+                        return;
+                    }
+                }
+                events.add(new QueuedEvent<>(event, System.nanoTime()));
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            finally {
+                lock.unlock();
+            }
+            while (true) {
+                Executor current = executor;
+                try {
+                    current.execute(this);
+                    return;
+                }
+                catch (RejectedExecutionException e) {
+                    if (current == executor) {
+                        reject(e);
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Drops the queued events after the executor rejected the drain, so the next event starts a new drain and
+         * blocked dispatchers are released.
+         */
+        private void reject(RejectedExecutionException e) {
+            int rejected;
+            lock.lock();
+            try {
+                rejected = events.size();
+                events.clear();
+                draining = false;
+                notFull.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+            dropped.addAndGet(rejected);
+            LOGGER.log(Level.WARNING, "Executor rejected event delivery, dropped " + rejected + " queued events", e);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                QueuedEvent<E> queued;
+                lock.lock();
+                try {
+                    queued = events.poll();
+                    if (queued == null) {
+                        draining = false;
+                        return;
+                    }
+                    notFull.signalAll();
+                }
+                finally {
+                    lock.unlock();
+                }
+                long nanos = System.nanoTime() - queued.dispatchNanos;
+                latency.record(nanos);
+                LongConsumer recorder = latencyRecorder;
+                if (recorder != null) {
+                    recorder.accept(nanos);
+                }
+                try {
+                    delivery.accept(listener, queued.event);
+                }
+                catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Listener failed to handle event", e);
+                }
+            }
+        }
+    }
+}
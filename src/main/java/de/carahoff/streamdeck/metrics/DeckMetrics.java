@@ -0,0 +1,100 @@
+package de.carahoff.streamdeck.metrics;
+
+import de.carahoff.streamdeck.event.DeviceEvent;
+
+/**
+ * Receives measurements of a StreamDeck, e.g. how long images take to encode and to write and how many writes
+ * failed. All methods do nothing by default, so an implementation only overrides what it records. Methods are called
+ * from the threads that encode and write images and read key reports, they must be thread-safe and return quickly.
+ *
+ * @see DeckStatistics
+ */
+public interface DeckMetrics {
+    /**
+     * Metrics that record nothing. StreamDecks skip taking time stamps while they use it.
+     */
+    DeckMetrics NONE = new DeckMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    /**
+     * Returns whether measurements are recorded. If not, callers may skip taking time stamps.
+     *
+     * @return true if measurements are recorded
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * Called when an image was prepared for a key.
+     *
+     * @param cacheHit
+     *            true if the prepared image was taken from the image cache
+     */
+    default void imagePrepared(boolean cacheHit) {
+    }
+
+    /**
+     * Called when an image was flipped and encoded into the device format.
+     *
+     * @param nanos
+     *            time taken to flip and encode the image
+     * @param bytes
+     *            size of the encoded image
+     */
+    default void imageEncoded(long nanos, int bytes) {
+    }
+
+    /**
+     * Called when all pages of a key image were written to the device.
+     *
+     * @param pages
+     *            number of reports written
+     * @param bytes
+     *            number of image bytes written, without page headers
+     * @param nanos
+     *            time taken to write all pages
+     */
+    default void imageWritten(int pages, int bytes, long nanos) {
+    }
+
+    /**
+     * Called when the device rejected a report that was written to it.
+     */
+    default void writeFailed() {
+    }
+
+    /**
+     * Called when an image was not sent because the key already shows it.
+     */
+    default void imageSkipped() {
+    }
+
+    /**
+     * Called for every key report read from the device.
+     */
+    default void keyReportRead() {
+    }
+
+    /**
+     * Called when a key event reached a listener.
+     *
+     * @param lagNanos
+     *            time between dispatching the event and the listener receiving it
+     */
+    default void keyEventDelivered(long lagNanos) {
+    }
+
+    /**
+     * Called when a device was attached, detached or failed.
+     *
+     * @param type
+     *            of the device event
+     */
+    default void deviceEvent(DeviceEvent.Type type) {
+    }
+}
@@ -0,0 +1,289 @@
+package de.carahoff.streamdeck.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import de.carahoff.streamdeck.event.DeviceEvent;
+import de.carahoff.streamdeck.util.Histogram;
+
+/**
+ * {@link DeckMetrics} that keeps counters and histograms of a StreamDeck. Counters are {@link LongAdder}s and times
+ * are recorded in lock-free {@link Histogram}s, so the threads of the deck never wait for each other or for a reader.
+ * The statistics can be registered as MXBean, so they can be watched and alerted on through JMX.
+ */
+public class DeckStatistics implements DeckMetrics, DeckStatisticsMXBean {
+    public static final String DOMAIN = "de.carahoff.streamdeck";
+    private static final Logger LOGGER = Logger.getLogger(DeckStatistics.class.getName());
+
+    private final LongAdder imagesPrepared = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder encodedBytes = new LongAdder();
+    private final Histogram encodeTimes = new Histogram();
+    private final LongAdder pagesWritten = new LongAdder();
+    private final LongAdder writtenBytes = new LongAdder();
+    private final Histogram writeTimes = new Histogram();
+    private final LongAdder writeFailures = new LongAdder();
+    private final LongAdder imagesSkipped = new LongAdder();
+    private final LongAdder keyReports = new LongAdder();
+    private final Histogram keyEventLags = new Histogram();
+    private final LongAdder devicesAttached = new LongAdder();
+    private final LongAdder devicesDetached = new LongAdder();
+    private final LongAdder deviceFailures = new LongAdder();
+    private ObjectName objectName;
+
+    /**
+     * Registers these statistics with the platform MBean server as
+     * {@code de.carahoff.streamdeck:type=StreamDeck,name=<name>}.
+     *
+     * @param name
+     *            identifying the deck, e.g. its serial number
+     * @return true if the statistics were registered, false if the name is taken or JMX is not available
+     */
+    public synchronized boolean register(String name) {
+        unregister();
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=StreamDeck,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+            return true;
+        }
+        catch (JMException | SecurityException e) {
+            LOGGER.log(Level.WARNING, "Unable to register StreamDeck statistics " + name, e);
+            return false;
+        }
+    }
+
+    /**
+     * Removes these statistics from the platform MBean server, if they were registered.
+     */
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        }
+        catch (JMException | SecurityException e) {
+            LOGGER.log(Level.WARNING, "Unable to unregister StreamDeck statistics " + objectName, e);
+        }
+        objectName = null;
+    }
+
+    /**
+     * Returns the name these statistics are registered under.
+     *
+     * @return object name or null if not registered
+     */
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    public Histogram getEncodeTimeHistogram() {
+        return encodeTimes;
+    }
+
+    public Histogram getWriteTimeHistogram() {
+        return writeTimes;
+    }
+
+    public Histogram getKeyEventLagHistogram() {
+        return keyEventLags;
+    }
+
+    @Override
+    public void imagePrepared(boolean cacheHit) {
+        imagesPrepared.increment();
+        if (cacheHit) {
+            cacheHits.increment();
+        }
+    }
+
+    @Override
+    public void imageEncoded(long nanos, int bytes) {
+        encodeTimes.record(nanos);
+        encodedBytes.add(bytes);
+    }
+
+    @Override
+    public void imageWritten(int pages, int bytes, long nanos) {
+        writeTimes.record(nanos);
+        pagesWritten.add(pages);
+        writtenBytes.add(bytes);
+    }
+
+    @Override
+    public void writeFailed() {
+        writeFailures.increment();
+    }
+
+    @Override
+    public void imageSkipped() {
+        imagesSkipped.increment();
+    }
+
+    @Override
+    public void keyReportRead() {
+        keyReports.increment();
+    }
+
+    @Override
+    public void keyEventDelivered(long lagNanos) {
+        keyEventLags.record(lagNanos);
+    }
+
+    @Override
+    public void deviceEvent(DeviceEvent.Type type) {
+        switch (type) {
+            case ATTACHED:
+                devicesAttached.increment();
+                break;
+            case DETACHED:
+                devicesDetached.increment();
+                break;
+            default:
+                deviceFailures.increment();
+        }
+    }
+
+    @Override
+    public long getImagesPrepared() {
+        return imagesPrepared.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getImagesEncoded() {
+        return encodeTimes.getCount();
+    }
+
+    @Override
+    public long getEncodedBytes() {
+        return encodedBytes.sum();
+    }
+
+    @Override
+    public double getEncodeTimeMeanMicros() {
+        return encodeTimes.getMean() / 1000;
+    }
+
+    @Override
+    public long getEncodeTimeP99Micros() {
+        return toMicros(encodeTimes.getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getEncodeTimeMaxMicros() {
+        return toMicros(encodeTimes.getMax());
+    }
+
+    @Override
+    public long getImagesWritten() {
+        return writeTimes.getCount();
+    }
+
+    @Override
+    public long getPagesWritten() {
+        return pagesWritten.sum();
+    }
+
+    @Override
+    public long getWrittenBytes() {
+        return writtenBytes.sum();
+    }
+
+    @Override
+    public double getWriteTimeMeanMicros() {
+        return writeTimes.getMean() / 1000;
+    }
+
+    @Override
+    public long getWriteTimeP99Micros() {
+        return toMicros(writeTimes.getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getWriteTimeMaxMicros() {
+        return toMicros(writeTimes.getMax());
+    }
+
+    @Override
+    public long getWriteFailures() {
+        return writeFailures.sum();
+    }
+
+    @Override
+    public long getImagesSkipped() {
+        return imagesSkipped.sum();
+    }
+
+    @Override
+    public long getKeyReports() {
+        return keyReports.sum();
+    }
+
+    @Override
+    public double getKeyEventLagMeanMicros() {
+        return keyEventLags.getMean() / 1000;
+    }
+
+    @Override
+    public long getKeyEventLagP99Micros() {
+        return toMicros(keyEventLags.getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getKeyEventLagMaxMicros() {
+        return toMicros(keyEventLags.getMax());
+    }
+
+    @Override
+    public long getDevicesAttached() {
+        return devicesAttached.sum();
+    }
+
+    @Override
+    public long getDevicesDetached() {
+        return devicesDetached.sum();
+    }
+
+    @Override
+    public long getDeviceFailures() {
+        return deviceFailures.sum();
+    }
+
+    @Override
+    public void reset() {
+        imagesPrepared.reset();
+        cacheHits.reset();
+        encodedBytes.reset();
+        encodeTimes.reset();
+        pagesWritten.reset();
+        writtenBytes.reset();
+        writeTimes.reset();
+        writeFailures.reset();
+        imagesSkipped.reset();
+        keyReports.reset();
+        keyEventLags.reset();
+        devicesAttached.reset();
+        devicesDetached.reset();
+        deviceFailures.reset();
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
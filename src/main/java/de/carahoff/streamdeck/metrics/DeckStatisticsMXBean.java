@@ -0,0 +1,53 @@
+package de.carahoff.streamdeck.metrics;
+
+/**
+ * Management interface of {@link DeckStatistics}. Times are given in microseconds.
+ */
+public interface DeckStatisticsMXBean {
+
+    public long getImagesPrepared();
+
+    public long getCacheHits();
+
+    public long getImagesEncoded();
+
+    public long getEncodedBytes();
+
+    public double getEncodeTimeMeanMicros();
+
+    public long getEncodeTimeP99Micros();
+
+    public long getEncodeTimeMaxMicros();
+
+    public long getImagesWritten();
+
+    public long getPagesWritten();
+
+    public long getWrittenBytes();
+
+    public double getWriteTimeMeanMicros();
+
+    public long getWriteTimeP99Micros();
+
+    public long getWriteTimeMaxMicros();
+
+    public long getWriteFailures();
+
+    public long getImagesSkipped();
+
+    public long getKeyReports();
+
+    public double getKeyEventLagMeanMicros();
+
+    public long getKeyEventLagP99Micros();
+
+    public long getKeyEventLagMaxMicros();
+
+    public long getDevicesAttached();
+
+    public long getDevicesDetached();
+
+    public long getDeviceFailures();
+
+    public void reset();
+}
@@ -0,0 +1,239 @@
+package de.carahoff.streamdeck.render;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.LineMetrics;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache of glyphs of one font and color rasterised into a single atlas image. A glyph is rasterised the first time it
+ * is drawn, later strings are composed by copying the glyphs out of the atlas, so drawing changing text such as a
+ * counter neither lays out the font again nor allocates images.
+ * <p>
+ * Glyphs are placed next to each other without kerning or ligatures, which is what short labels on a key need.
+ */
+public class GlyphAtlas {
+    private static final int INITIAL_SIZE = 256;
+    private static final int GLYPH_MARGIN = 1;
+
+    private final Font font;
+    private final Color color;
+    private final FontRenderContext renderContext;
+    private final Map<Integer, Glyph> glyphs = new HashMap<>();
+    private final int ascent;
+    private final int descent;
+    private final int lineHeight;
+    private BufferedImage atlas;
+    private Graphics2D atlasGraphics;
+    private int shelfX;
+    private int shelfY;
+    private int shelfHeight;
+
+    /**
+     * Creates an empty atlas.
+     *
+     * @param font
+     *            glyphs are rasterised with, its size is the size in pixels
+     * @param color
+     *            glyphs are rasterised in
+     */
+    public GlyphAtlas(Font font, Color color) {
+        this.font = font;
+        this.color = color;
+        this.renderContext = new FontRenderContext(null, true, false);
+        LineMetrics lineMetrics = font.getLineMetrics("Ag", renderContext);
+        this.ascent = (int) Math.ceil(lineMetrics.getAscent());
+        this.descent = (int) Math.ceil(lineMetrics.getDescent());
+        this.lineHeight = (int) Math.ceil(lineMetrics.getHeight());
+        this.atlas = new BufferedImage(INITIAL_SIZE, INITIAL_SIZE, BufferedImage.TYPE_INT_ARGB);
+        this.atlasGraphics = createGraphics(atlas);
+    }
+
+    public Font getFont() {
+        return font;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    public int getAscent() {
+        return ascent;
+    }
+
+    public int getDescent() {
+        return descent;
+    }
+
+    public int getLineHeight() {
+        return lineHeight;
+    }
+
+    /**
+     * Returns the number of distinct glyphs rasterised so far.
+     *
+     * @return number of cached glyphs
+     */
+    public synchronized int getGlyphCount() {
+        return glyphs.size();
+    }
+
+    /**
+     * Returns the width the given text takes when drawn with {@link #drawString(Graphics2D, CharSequence, int, int)}.
+     *
+     * @param text
+     *            to measure
+     * @return width in pixels
+     */
+    public synchronized int getWidth(CharSequence text) {
+        return getWidth(text, 0, text.length());
+    }
+
+    /**
+     * Returns the width the given part of the text takes when drawn.
+     *
+     * @param text
+     *            to measure
+     * @param start
+     *            index of the first char
+     * @param end
+     *            index after the last char
+     * @return width in pixels
+     */
+    public synchronized int getWidth(CharSequence text, int start, int end) {
+        int width = 0;
+        for (int i = start; i < end;) {
+            int codePoint = Character.codePointAt(text, i);
+            width += glyph(codePoint).advance;
+            i += Character.charCount(codePoint);
+        }
+        return width;
+    }
+
+    /**
+     * Draws the given text from the atlas.
+     *
+     * @param g
+     *            graphics to draw on
+     * @param text
+     *            to draw
+     * @param x
+     *            left end of the text
+     * @param baseline
+     *            y coordinate of the baseline
+     */
+    public synchronized void drawString(Graphics2D g, CharSequence text, int x, int baseline) {
+        drawString(g, text, 0, text.length(), x, baseline);
+    }
+
+    /**
+     * Draws the given part of the text from the atlas.
+     *
+     * @param g
+     *            graphics to draw on
+     * @param text
+     *            to draw
+     * @param start
+     *            index of the first char
+     * @param end
+     *            index after the last char
+     * @param x
+     *            left end of the text
+     * @param baseline
+     *            y coordinate of the baseline
+     */
+    public synchronized void drawString(Graphics2D g, CharSequence text, int start, int end, int x, int baseline) {
+        for (int i = start; i < end;) {
+            int codePoint = Character.codePointAt(text, i);
+            Glyph glyph = glyph(codePoint);
+            if (glyph.width > 0) {
+                int dx = x + glyph.offsetX;
+                int dy = baseline + glyph.offsetY;
+                g.drawImage(atlas, dx, dy, dx + glyph.width, dy + glyph.height, glyph.x, glyph.y,
+                        glyph.x + glyph.width, glyph.y + glyph.height, null);
+            }
+            x += glyph.advance;
+            i += Character.charCount(codePoint);
+        }
+    }
+
+    private Glyph glyph(int codePoint) {
+        Glyph glyph = glyphs.get(codePoint);
+        if (glyph == null) {
+            glyph = rasterise(codePoint);
+            glyphs.put(codePoint, glyph);
+        }
+        return glyph;
+    }
+
+    private Glyph rasterise(int codePoint) {
+        GlyphVector vector = font.createGlyphVector(renderContext, new String(Character.toChars(codePoint)));
+        int advance = (int) Math.round(vector.getLogicalBounds().getWidth());
+        Rectangle bounds = vector.getPixelBounds(renderContext, 0, 0);
+        if (bounds.isEmpty()) {
+            return new Glyph(0, 0, 0, 0, 0, 0, advance);
+        }
+        int width = bounds.width + 2 * GLYPH_MARGIN;
+        int height = bounds.height + 2 * GLYPH_MARGIN;
+        if (shelfX + width > atlas.getWidth()) {
+            shelfX = 0;
+            shelfY += shelfHeight;
+            shelfHeight = 0;
+        }
+        while (shelfY + height > atlas.getHeight() || width > atlas.getWidth()) {
+            grow();
+        }
+        int x = shelfX;
+        int y = shelfY;
+        atlasGraphics.drawGlyphVector(vector, x + GLYPH_MARGIN - bounds.x, y + GLYPH_MARGIN - bounds.y);
+        shelfX += width;
+        shelfHeight = Math.max(shelfHeight, height);
+        return new Glyph(x, y, width, height, bounds.x - GLYPH_MARGIN, bounds.y - GLYPH_MARGIN, advance);
+    }
+
+    private void grow() {
+        BufferedImage grown = new BufferedImage(atlas.getWidth() * 2, atlas.getHeight() * 2,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D grownGraphics = createGraphics(grown);
+        grownGraphics.drawImage(atlas, 0, 0, null);
+        atlasGraphics.dispose();
+        atlas = grown;
+        atlasGraphics = grownGraphics;
+    }
+
+    private Graphics2D createGraphics(BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_OFF);
+        g.setFont(font);
+        g.setColor(color);
+        return g;
+    }
+
+    private static final class Glyph {
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+        private final int offsetX;
+        private final int offsetY;
+        private final int advance;
+
+        private Glyph(int x, int y, int width, int height, int offsetX, int offsetY, int advance) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            this.advance = advance;
+        }
+    }
+}
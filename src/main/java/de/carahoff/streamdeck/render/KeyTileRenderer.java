@@ -0,0 +1,365 @@
+package de.carahoff.streamdeck.render;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+
+import de.carahoff.streamdeck.device.BasicHidStreamDeck;
+import de.carahoff.streamdeck.device.StreamDeck;
+
+/**
+ * Renders text and icons into key sized tiles. The tile has the pixel size of a key, the padding of the deck is kept
+ * free around its content and font sizes are given in points and converted to pixels with the DPI of the deck, so
+ * the same point size looks alike on every deck.
+ * <p>
+ * Glyphs are taken from a {@link GlyphAtlas} per font size and color and icons are scaled once per size, and all
+ * content is composed into one tile buffer that is reused by every call. The returned tile is only valid until the
+ * next call of this renderer; {@link StreamDeck#setImage(int, Image)} of a {@link BasicHidStreamDeck} encodes the
+ * image before it returns, so the tile can be passed to it directly. Use {@link #setText(StreamDeck, int, String,
+ * float, Color)} and {@link #setIcon(StreamDeck, int, Image, String, float, Color)} to render and set a key in one
+ * step.
+ */
+public class KeyTileRenderer {
+    private static final int POINTS_PER_INCH = 72;
+
+    private final int pixels;
+    private final int padding;
+    private final int dpi;
+    private final BufferedImage tile;
+    private final Graphics2D tileGraphics;
+    private final Map<AtlasKey, GlyphAtlas> atlases = new HashMap<>();
+    private final Map<Image, BufferedImage> scaledIcons = new WeakHashMap<>();
+    private String fontName = Font.SANS_SERIF;
+    private int fontStyle = Font.BOLD;
+    private Color background = Color.BLACK;
+
+    /**
+     * Creates a renderer for the keys of the given deck.
+     *
+     * @param deck
+     *            whose pixels, padding and DPI size the tile
+     */
+    public KeyTileRenderer(BasicHidStreamDeck deck) {
+        this(deck.getPixels(), deck.getPadding(), deck.getDPI());
+    }
+
+    /**
+     * Creates a renderer for keys of the given size.
+     *
+     * @param pixels
+     *            width and height of a key
+     * @param padding
+     *            pixels kept free around the content, half of it on each side
+     * @param dpi
+     *            dots per inch of the key display
+     */
+    public KeyTileRenderer(int pixels, int padding, int dpi) {
+        if (pixels < 1 || padding < 0 || padding >= pixels || dpi < 1) {
+            throw new IllegalArgumentException("Invalid tile size");
+        }
+        this.pixels = pixels;
+        this.padding = padding;
+        this.dpi = dpi;
+        this.tile = new BufferedImage(pixels, pixels, BufferedImage.TYPE_3BYTE_BGR);
+        this.tileGraphics = tile.createGraphics();
+        tileGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    }
+
+    public int getPixels() {
+        return pixels;
+    }
+
+    public int getPadding() {
+        return padding;
+    }
+
+    public int getDPI() {
+        return dpi;
+    }
+
+    /**
+     * Returns the width and height of the area inside the padding.
+     *
+     * @return size of the content area in pixels
+     */
+    public int getContentSize() {
+        return pixels - padding;
+    }
+
+    /**
+     * Sets the font used for text, e.g. {@link Font#SANS_SERIF} and {@link Font#BOLD}.
+     *
+     * @param fontName
+     *            font family or logical font name
+     * @param fontStyle
+     *            style of the font
+     */
+    public synchronized void setFont(String fontName, int fontStyle) {
+        this.fontName = Objects.requireNonNull(fontName, "Font name must not be null");
+        this.fontStyle = fontStyle;
+    }
+
+    public synchronized void setBackground(Color background) {
+        this.background = Objects.requireNonNull(background, "Background must not be null");
+    }
+
+    /**
+     * Converts a font size in points to pixels on the key display.
+     *
+     * @param points
+     *            font size in points
+     * @return font size in pixels, at least 1
+     */
+    public int toPixels(float points) {
+        return Math.max(1, Math.round(points * dpi / POINTS_PER_INCH));
+    }
+
+    /**
+     * Returns the atlas of the current font in the given size and color, creating it on first use.
+     *
+     * @param sizePixels
+     *            font size in pixels
+     * @param color
+     *            of the glyphs
+     * @return atlas shared by all calls with the same font, size and color
+     */
+    public synchronized GlyphAtlas getAtlas(int sizePixels, Color color) {
+        AtlasKey key = new AtlasKey(fontName, fontStyle, sizePixels, color);
+        GlyphAtlas atlas = atlases.get(key);
+        if (atlas == null) {
+            atlas = new GlyphAtlas(new Font(fontName, fontStyle, sizePixels), color);
+            atlases.put(key, atlas);
+        }
+        return atlas;
+    }
+
+    /**
+     * Renders the given text centered on the tile. Lines are separated by '\n'. Text that does not fit into the
+     * content area is drawn with a smaller font.
+     *
+     * @param text
+     *            to render
+     * @param points
+     *            font size in points
+     * @param color
+     *            of the text
+     * @return the reused tile
+     */
+    public synchronized BufferedImage renderText(String text, float points, Color color) {
+        clear();
+        int content = getContentSize();
+        drawLines(text, fitAtlas(text, toPixels(points), color, content, content), padding / 2, content);
+        return tile;
+    }
+
+    /**
+     * Renders the given icon scaled into the content area, keeping its aspect ratio.
+     *
+     * @param icon
+     *            to render
+     * @return the reused tile
+     */
+    public synchronized BufferedImage renderIcon(Image icon) {
+        clear();
+        int content = getContentSize();
+        drawIcon(icon, padding / 2, content);
+        return tile;
+    }
+
+    /**
+     * Renders the given icon with a label below it. The label takes the lines it needs at the bottom of the content
+     * area and the icon is scaled into the remaining space.
+     *
+     * @param icon
+     *            to render
+     * @param label
+     *            drawn below the icon
+     * @param points
+     *            font size of the label in points
+     * @param color
+     *            of the label
+     * @return the reused tile
+     */
+    public synchronized BufferedImage renderIcon(Image icon, String label, float points, Color color) {
+        clear();
+        int content = getContentSize();
+        GlyphAtlas atlas = fitAtlas(label, toPixels(points), color, content, content / 2);
+        int labelHeight = lineCount(label) * atlas.getLineHeight();
+        int iconSize = content - labelHeight;
+        drawIcon(icon, padding / 2, iconSize);
+        drawLines(label, atlas, padding / 2 + iconSize, labelHeight);
+        return tile;
+    }
+
+    /**
+     * Renders the given text and sets it as image of the key at the given keyIndex.
+     *
+     * @param deck
+     *            the key belongs to
+     * @param keyIndex
+     *            of key that is to be set
+     * @param text
+     *            to render
+     * @param points
+     *            font size in points
+     * @param color
+     *            of the text
+     */
+    public synchronized void setText(StreamDeck deck, int keyIndex, String text, float points, Color color) {
+        deck.setImage(keyIndex, forDeck(deck, renderText(text, points, color)));
+    }
+
+    /**
+     * Renders the given icon with a label and sets it as image of the key at the given keyIndex.
+     *
+     * @param deck
+     *            the key belongs to
+     * @param keyIndex
+     *            of key that is to be set
+     * @param icon
+     *            to render
+     * @param label
+     *            drawn below the icon
+     * @param points
+     *            font size of the label in points
+     * @param color
+     *            of the label
+     */
+    public synchronized void setIcon(StreamDeck deck, int keyIndex, Image icon, String label, float points,
+            Color color) {
+        deck.setImage(keyIndex, forDeck(deck, renderIcon(icon, label, points, color)));
+    }
+
+    /**
+     * Decks other than {@link BasicHidStreamDeck} may keep the image, e.g. to set it again after the device was
+     * reattached, so they get a copy of the tile.
+     */
+    private Image forDeck(StreamDeck deck, BufferedImage image) {
+        if (deck instanceof BasicHidStreamDeck) {
+            return image;
+        }
+        BufferedImage copy = new BufferedImage(pixels, pixels, BufferedImage.TYPE_3BYTE_BGR);
+        copy.setData(image.getRaster());
+        return copy;
+    }
+
+    private void clear() {
+        tileGraphics.setColor(background);
+        tileGraphics.fillRect(0, 0, pixels, pixels);
+    }
+
+    private GlyphAtlas fitAtlas(String text, int sizePixels, Color color, int maxWidth, int maxHeight) {
+        GlyphAtlas atlas = getAtlas(sizePixels, color);
+        int width = maxLineWidth(text, atlas);
+        int height = lineCount(text) * atlas.getLineHeight();
+        if (width <= maxWidth && height <= maxHeight) {
+            return atlas;
+        }
+        double scale = Math.min((double) maxWidth / Math.max(1, width), (double) maxHeight / Math.max(1, height));
+        return getAtlas(Math.max(1, (int) (sizePixels * scale)), color);
+    }
+
+    private void drawLines(String text, GlyphAtlas atlas, int top, int height) {
+        int lineHeight = atlas.getLineHeight();
+        int y = top + (height - lineCount(text) * lineHeight) / 2;
+        int start = 0;
+        while (start <= text.length()) {
+            int end = lineEnd(text, start);
+            int x = (pixels - atlas.getWidth(text, start, end)) / 2;
+            atlas.drawString(tileGraphics, text, start, end, x, y + atlas.getAscent());
+            y += lineHeight;
+            start = end + 1;
+        }
+    }
+
+    private void drawIcon(Image icon, int top, int size) {
+        if (size < 1) {
+            return;
+        }
+        BufferedImage scaled = scaledIcon(icon, size);
+        int x = (pixels - scaled.getWidth()) / 2;
+        int y = top + (size - scaled.getHeight()) / 2;
+        tileGraphics.drawImage(scaled, x, y, null);
+    }
+
+    private BufferedImage scaledIcon(Image icon, int size) {
+        BufferedImage scaled = scaledIcons.get(icon);
+        if (scaled != null && Math.max(scaled.getWidth(), scaled.getHeight()) == size) {
+            return scaled;
+        }
+        int iconWidth = Math.max(1, icon.getWidth(null));
+        int iconHeight = Math.max(1, icon.getHeight(null));
+        double scale = Math.min((double) size / iconWidth, (double) size / iconHeight);
+        int width = Math.max(1, (int) Math.round(iconWidth * scale));
+        int height = Math.max(1, (int) Math.round(iconHeight * scale));
+        scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g.drawImage(icon, 0, 0, width, height, null);
+        g.dispose();
+        scaledIcons.put(icon, scaled);
+        return scaled;
+    }
+
+    private static int maxLineWidth(String text, GlyphAtlas atlas) {
+        int width = 0;
+        int start = 0;
+        while (start <= text.length()) {
+            int end = lineEnd(text, start);
+            width = Math.max(width, atlas.getWidth(text, start, end));
+            start = end + 1;
+        }
+        return width;
+    }
+
+    private static int lineCount(String text) {
+        int lines = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private static int lineEnd(String text, int start) {
+        int end = text.indexOf('\n', start);
+        return end < 0 ? text.length() : end;
+    }
+
+    private static final class AtlasKey {
+        private final String fontName;
+        private final int fontStyle;
+        private final int sizePixels;
+        private final Color color;
+
+        private AtlasKey(String fontName, int fontStyle, int sizePixels, Color color) {
+            this.fontName = fontName;
+            this.fontStyle = fontStyle;
+            this.sizePixels = sizePixels;
+            this.color = color;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof AtlasKey)) {
+                return false;
+            }
+            AtlasKey other = (AtlasKey) obj;
+            return fontStyle == other.fontStyle && sizePixels == other.sizePixels
+                    && fontName.equals(other.fontName) && color.equals(other.color);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fontName, fontStyle, sizePixels, color);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package de.carahoff.streamdeck.render;
+
+import java.awt.Image;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import de.carahoff.streamdeck.device.BasicHidStreamDeck;
+import de.carahoff.streamdeck.device.StreamDeck;
+import de.carahoff.streamdeck.util.ImageData;
+
+/**
+ * Renders, flips and encodes key images for any number of StreamDecks on a pool of worker threads and hands the
+ * encoded images to the writer thread of each deck. Encoding therefore runs on all cores while each deck's USB
+ * writes stay serialized on its own writer.
+ * <p>
+ * At most maxInFlight images are rendered or encoded at a time, further submissions block the caller until a worker
+ * is done. The writer queue of a deck holds at most one image per key, so a deck that writes slower than images are
+ * submitted only sends the latest image of each key. Images submitted for the same key of the same deck are handed
+ * to the deck in submission order, an image whose encoding finishes after a newer one is dropped.
+ * <p>
+ * Decks other than {@link BasicHidStreamDeck} receive the rendered image through
+ * {@link StreamDeck#setImageAsync(int, Image)} and encode it themselves.
+ */
+public class RenderPipeline implements AutoCloseable {
+    private final Executor executor;
+    private final ForkJoinPool ownPool;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final Map<KeySlot, Long> latestSubmissions = new HashMap<>();
+    private long submissionCount;
+
+    /**
+     * Creates a pipeline with its own fork-join pool using all available processors.
+     */
+    public RenderPipeline() {
+        this(new ForkJoinPool(Runtime.getRuntime().availableProcessors()), 4 * Runtime.getRuntime().availableProcessors(), true);
+    }
+
+    /**
+     * Creates a pipeline running on the given executor. The executor is not shut down by this pipeline.
+     *
+     * @param executor
+     *            images are rendered and encoded on
+     * @param maxInFlight
+     *            maximum number of images rendered or encoded at a time
+     */
+    public RenderPipeline(Executor executor, int maxInFlight) {
+        this(executor, maxInFlight, false);
+    }
+
+    private RenderPipeline(Executor executor, int maxInFlight, boolean ownsExecutor) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("At least one image must be allowed in flight");
+        }
+        this.executor = executor;
+        this.ownPool = ownsExecutor ? (ForkJoinPool) executor : null;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Encodes the given image for the key at the given keyIndex and queues it on the deck.
+     *
+     * @param deck
+     *            the image is meant for
+     * @param keyIndex
+     *            of key that is to be set
+     * @param img
+     *            that is to be set
+     * @return future that completes when the image was written or superseded
+     */
+    public CompletableFuture<Void> submit(StreamDeck deck, int keyIndex, Image img) {
+        Objects.requireNonNull(img, "Image must not be null");
+        return submit(deck, keyIndex, () -> img);
+    }
+
+    /**
+     * Renders the image of the key at the given keyIndex with the given renderer on a worker, encodes it and queues
+     * it on the deck.
+     *
+     * @param deck
+     *            the image is meant for
+     * @param keyIndex
+     *            of key that is to be set
+     * @param renderer
+     *            creating the image, called on a worker thread
+     * @return future that completes when the image was written or superseded
+     */
+    public CompletableFuture<Void> submit(StreamDeck deck, int keyIndex, Supplier<? extends Image> renderer) {
+        if (keyIndex >= deck.getKeys() || keyIndex < 0) {
+            throw new IllegalArgumentException("Key Index out of bounds");
+        }
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            inFlight.acquire();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        KeySlot slot = new KeySlot(deck, keyIndex);
+        long submission;
+        synchronized (latestSubmissions) {
+            submission = ++submissionCount;
+            latestSubmissions.put(slot, submission);
+        }
+        try {
+            executor.execute(() -> process(slot, submission, renderer, result));
+        }
+        catch (RuntimeException e) {
+            inFlight.release();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Submits the images of several keys, e.g. a full repaint of a deck.
+     *
+     * @param deck
+     *            the images are meant for
+     * @param images
+     *            images by keyIndex
+     * @return future that completes when all images were written or superseded
+     */
+    public CompletableFuture<Void> submitAll(StreamDeck deck, Map<Integer, ? extends Image> images) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(images.size());
+        for (Map.Entry<Integer, ? extends Image> entry : images.entrySet()) {
+            futures.add(submit(deck, entry.getKey(), entry.getValue()));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Returns the number of images currently rendered or encoded.
+     *
+     * @return images in flight
+     */
+    public int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    @Override
+    public void close() {
+        if (ownPool != null) {
+            ownPool.shutdown();
+        }
+    }
+
+    private void process(KeySlot slot, long submission, Supplier<? extends Image> renderer, CompletableFuture<Void> result) {
+        CompletableFuture<Void> write;
+        try {
+            Image img = renderer.get();
+            StreamDeck deck = slot.deck;
+            if (deck instanceof BasicHidStreamDeck) {
+                BasicHidStreamDeck basicDeck = (BasicHidStreamDeck) deck;
+                ImageData imageData = basicDeck.prepareImage(img);
+                write = handOff(slot, submission, () -> basicDeck.setImageDataAsync(slot.keyIndex, imageData));
+            }
+            else {
+                write = handOff(slot, submission, () -> deck.setImageAsync(slot.keyIndex, img));
+            }
+        }
+        catch (RuntimeException e) {
+            write = null;
+            synchronized (latestSubmissions) {
+                latestSubmissions.remove(slot, submission);
+            }
+            result.completeExceptionally(e);
+        }
+        finally {
+            inFlight.release();
+        }
+        if (write != null) {
+            write.whenComplete((ignored, failure) -> {
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                }
+                else {
+                    result.complete(null);
+                }
+            });
+        }
+    }
+
+    /**
+     * Queues the image on the deck unless a newer image was submitted for the same key, in which case the image is
+     * superseded. Checking and queueing under one lock keeps an older image from being queued after a newer one.
+     */
+    private CompletableFuture<Void> handOff(KeySlot slot, long submission, Supplier<CompletableFuture<Void>> queue) {
+        synchronized (latestSubmissions) {
+            Long latest = latestSubmissions.get(slot);
+            if (latest == null || latest != submission) {
+                return CompletableFuture.completedFuture(null);
+            }
+            latestSubmissions.remove(slot);
+            return queue.get();
+        }
+    }
+
+    private static final class KeySlot {
+        private final StreamDeck deck;
+        private final int keyIndex;
+
+        private KeySlot(StreamDeck deck, int keyIndex) {
+            this.deck = deck;
+            this.keyIndex = keyIndex;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof KeySlot)) {
+                return false;
+            }
+            KeySlot other = (KeySlot) obj;
+            return deck == other.deck && keyIndex == other.keyIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(deck) * 31 + keyIndex;
+        }
+    }
+}
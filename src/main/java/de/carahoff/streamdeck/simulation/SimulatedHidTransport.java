@@ -0,0 +1,323 @@
+package de.carahoff.streamdeck.simulation;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.imageio.ImageIO;
+
+import de.carahoff.streamdeck.device.HidTransport;
+
+/**
+ * In-memory StreamDeck MK2 for load tests without hardware. Image pages written to it are reassembled into one
+ * framebuffer per key, key presses are injected with {@link #pressKey(int)} and {@link #releaseKey(int)}, and every
+ * output report can be delayed to model the time a USB transfer takes.
+ * <p>
+ * Reports of the wrong size and pages arriving out of order are counted, so tests can assert that none occurred.
+ */
+public class SimulatedHidTransport implements HidTransport {
+    private static final int MK2_KEYS = 15;
+    private static final int MK2_IMAGE_PAGE_SIZE = 1024;
+    private static final int MK2_IMAGE_PAGE_HEADER_SIZE = 8;
+    private static final int MK2_FEATURE_REPORT_SIZE = 32;
+    private static final int MK2_KEY_STATE_OFFSET = 4;
+    private static final int MK2_FIRMWARE_OFFSET = 6;
+
+    private static final byte IMAGE_REPORT_ID = 0x02;
+    private static final byte IMAGE_COMMAND = 0x07;
+    private static final byte COMMAND_REPORT_ID = 0x03;
+    private static final byte BRIGHTNESS_COMMAND = 0x08;
+    private static final byte RESET_COMMAND = 0x02;
+    private static final byte FIRMWARE_REPORT_ID = 0x05;
+    private static final byte KEY_REPORT_ID = 0x01;
+
+    private final String serialNumber;
+    private final String firmwareVersion;
+    private final byte[] keyStates;
+    private final BlockingQueue<byte[]> keyReports = new LinkedBlockingQueue<>();
+    private final ByteArrayOutputStream[] pendingFrames;
+    private final int[] nextPages;
+    private final byte[][] frames;
+    private final AtomicLong reportsWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong framesCompleted = new AtomicLong();
+    private final AtomicLong rejectedReports = new AtomicLong();
+    private final AtomicLong outOfOrderPages = new AtomicLong();
+    private volatile long writeLatencyNanos;
+    private volatile int brightness = -1;
+    private volatile boolean open;
+
+    public SimulatedHidTransport(String serialNumber) {
+        this(serialNumber, "1.00.000");
+    }
+
+    public SimulatedHidTransport(String serialNumber, String firmwareVersion) {
+        this.serialNumber = serialNumber;
+        this.firmwareVersion = firmwareVersion;
+        this.keyStates = new byte[MK2_KEYS];
+        this.pendingFrames = new ByteArrayOutputStream[MK2_KEYS];
+        this.nextPages = new int[MK2_KEYS];
+        this.frames = new byte[MK2_KEYS][];
+    }
+
+    /**
+     * Sets the time every output report takes to be written, as the USB transfer of a real device would.
+     *
+     * @param latency
+     *            per output report
+     */
+    public void setWriteLatency(Duration latency) {
+        this.writeLatencyNanos = Math.max(0, latency.toNanos());
+    }
+
+    public Duration getWriteLatency() {
+        return Duration.ofNanos(writeLatencyNanos);
+    }
+
+    public void pressKey(int keyIndex) {
+        setKeyState(keyIndex, (byte) 1);
+    }
+
+    public void releaseKey(int keyIndex) {
+        setKeyState(keyIndex, (byte) 0);
+    }
+
+    /**
+     * Returns the JPEG of the last image completely written to the key at the given keyIndex. The image is stored
+     * as the device receives it, i.e. rotated by 180 degrees.
+     *
+     * @param keyIndex
+     *            of the key
+     * @return JPEG bytes or null if no complete image was written since the last reset
+     */
+    public byte[] getFrame(int keyIndex) {
+        checkKeyIndex(keyIndex);
+        synchronized (frames) {
+            return frames[keyIndex];
+        }
+    }
+
+    /**
+     * Decodes the last image completely written to the key at the given keyIndex.
+     *
+     * @param keyIndex
+     *            of the key
+     * @return decoded image in device orientation or null if no complete image was written since the last reset
+     * @throws IOException
+     *             if the written bytes are not a valid image
+     */
+    public BufferedImage getFrameImage(int keyIndex) throws IOException {
+        byte[] frame = getFrame(keyIndex);
+        if (frame == null) {
+            return null;
+        }
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(frame));
+        if (image == null) {
+            throw new IOException("Frame of key " + keyIndex + " is not a readable image");
+        }
+        return image;
+    }
+
+    /**
+     * Returns the last brightness set on this device.
+     *
+     * @return brightness in percent or -1 if none was set
+     */
+    public int getBrightness() {
+        return brightness;
+    }
+
+    public long getReportsWritten() {
+        return reportsWritten.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public long getFramesCompleted() {
+        return framesCompleted.get();
+    }
+
+    /**
+     * Returns the number of reports that were rejected because of their size or an unknown report ID.
+     *
+     * @return number of rejected reports
+     */
+    public long getRejectedReports() {
+        return rejectedReports.get();
+    }
+
+    /**
+     * Returns the number of image pages that did not continue the image of their key, e.g. because pages of two
+     * writes to the same key were interleaved.
+     *
+     * @return number of out of order pages
+     */
+    public long getOutOfOrderPages() {
+        return outOfOrderPages.get();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean open() {
+        open = true;
+        return true;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    @Override
+    public int write(byte[] data, int length, byte reportId) {
+        if (!open) {
+            return -1;
+        }
+        long latency = writeLatencyNanos;
+        if (latency > 0) {
+            LockSupport.parkNanos(latency);
+        }
+        if (reportId != IMAGE_REPORT_ID || length != MK2_IMAGE_PAGE_SIZE - 1 || data[0] != IMAGE_COMMAND) {
+            rejectedReports.incrementAndGet();
+            return -1;
+        }
+        reportsWritten.incrementAndGet();
+        bytesWritten.addAndGet(length + 1);
+        receivePage(data);
+        return length + 1;
+    }
+
+    @Override
+    public int read(byte[] data, int timeoutMillis) {
+        if (!open) {
+            return -1;
+        }
+        byte[] report;
+        try {
+            report = keyReports.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        if (report == null) {
+            return 0;
+        }
+        int length = Math.min(report.length, data.length);
+        System.arraycopy(report, 0, data, 0, length);
+        return length;
+    }
+
+    @Override
+    public int getFeatureReport(byte[] data, byte reportId) {
+        if (!open) {
+            return -1;
+        }
+        if (reportId != FIRMWARE_REPORT_ID || data.length != MK2_FEATURE_REPORT_SIZE - 1) {
+            rejectedReports.incrementAndGet();
+            return -1;
+        }
+        byte[] version = firmwareVersion.getBytes(StandardCharsets.US_ASCII);
+        int offset = MK2_FIRMWARE_OFFSET - 1;
+        System.arraycopy(version, 0, data, offset, Math.min(version.length, data.length - offset));
+        return data.length + 1;
+    }
+
+    @Override
+    public int sendFeatureReport(byte[] data, byte reportId) {
+        if (!open) {
+            return -1;
+        }
+        if (reportId != COMMAND_REPORT_ID || data.length != MK2_FEATURE_REPORT_SIZE - 1) {
+            rejectedReports.incrementAndGet();
+            return -1;
+        }
+        if (data[0] == BRIGHTNESS_COMMAND) {
+            brightness = data[1];
+        }
+        else if (data[0] == RESET_COMMAND) {
+            reset();
+        }
+        else {
+            rejectedReports.incrementAndGet();
+            return -1;
+        }
+        return data.length + 1;
+    }
+
+    @Override
+    public String getSerialNumber() {
+        return serialNumber;
+    }
+
+    private void receivePage(byte[] report) {
+        // The report starts with the page header without its report ID
+        int keyIndex = report[1] & 0xff;
+        boolean lastPage = report[2] != 0;
+        int payloadLength = (report[3] & 0xff) | (report[4] & 0xff) << 8;
+        int pageIndex = (report[5] & 0xff) | (report[6] & 0xff) << 8;
+        int headerLength = MK2_IMAGE_PAGE_HEADER_SIZE - 1;
+        if (keyIndex >= MK2_KEYS || payloadLength > report.length - headerLength) {
+            rejectedReports.incrementAndGet();
+            return;
+        }
+
+        synchronized (frames) {
+            if (pageIndex == 0) {
+                pendingFrames[keyIndex] = new ByteArrayOutputStream(MK2_IMAGE_PAGE_SIZE * 4);
+            }
+            else if (pendingFrames[keyIndex] == null || pageIndex != nextPages[keyIndex]) {
+                outOfOrderPages.incrementAndGet();
+                pendingFrames[keyIndex] = null;
+                return;
+            }
+            pendingFrames[keyIndex].write(report, headerLength, payloadLength);
+            nextPages[keyIndex] = pageIndex + 1;
+            if (lastPage) {
+                frames[keyIndex] = pendingFrames[keyIndex].toByteArray();
+                pendingFrames[keyIndex] = null;
+                framesCompleted.incrementAndGet();
+            }
+        }
+    }
+
+    private void reset() {
+        synchronized (frames) {
+            for (int i = 0; i < MK2_KEYS; i++) {
+                frames[i] = null;
+                pendingFrames[i] = null;
+            }
+        }
+    }
+
+    private void setKeyState(int keyIndex, byte state) {
+        checkKeyIndex(keyIndex);
+        synchronized (keyStates) {
+            keyStates[keyIndex] = state;
+            byte[] report = new byte[MK2_KEY_STATE_OFFSET + MK2_KEYS];
+            report[0] = KEY_REPORT_ID;
+            System.arraycopy(keyStates, 0, report, MK2_KEY_STATE_OFFSET, MK2_KEYS);
+            keyReports.add(report);
+        }
+    }
+
+    private static void checkKeyIndex(int keyIndex) {
+        if (keyIndex >= MK2_KEYS || keyIndex < 0) {
+            throw new IllegalArgumentException("Key Index out of bounds");
+        }
+    }
+}
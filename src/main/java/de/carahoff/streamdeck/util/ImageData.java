@@ -1,32 +1,86 @@
 package de.carahoff.streamdeck.util;
 
+import java.nio.ByteBuffer;
+
 public class ImageData {
     private byte[] image;
+    private int offset;
+    private ByteBuffer buffer;
+    private int length;
     private int pageSize;
-    
+
     public ImageData(byte[] image, int pageSize) {
         this.image = image;
+        this.length = image.length;
         this.pageSize = pageSize;
     }
-    
-    public byte[] page(int pageIndex) {
-        int offset = pageIndex * pageSize;
-        if (offset >= image.length) {
-            return new byte[]{};
-        }
 
-        int length = pageLength(pageIndex);
-        if (offset + length > image.length) {
-            length = image.length - offset;
+    /**
+     * Creates ImageData backed by the remaining bytes of the given buffer, e.g. a slice of a memory-mapped file. The
+     * bytes are not copied, pages are copied straight from the buffer, or the array backing it, into the report.
+     *
+     * @param image
+     *            buffer holding the image bytes between its position and limit
+     * @param pageSize
+     *            payload size of one page
+     */
+    public ImageData(ByteBuffer image, int pageSize) {
+        if (image.hasArray()) {
+            this.image = image.array();
+            this.offset = image.arrayOffset() + image.position();
         }
+        else {
+            this.buffer = image.slice().asReadOnlyBuffer();
+        }
+        this.length = image.remaining();
+        this.pageSize = pageSize;
+    }
 
-        byte[] pageData = new byte[length];
-        System.arraycopy(image, offset, pageData, 0, length);
-
+    /**
+     * Returns a copy of the payload of the given page.
+     *
+     * @param pageIndex
+     *            of the page
+     * @return page payload, empty if the image has no such page
+     * @deprecated allocates an array per page, use {@link #copyPage(int, byte[], int)} instead
+     */
+    @Deprecated
+    public byte[] page(int pageIndex) {
+        byte[] pageData = new byte[pageLength(pageIndex)];
+        copyPage(pageIndex, pageData, 0);
         return pageData;
     }
-    private int pageLength(int pageIndex) {
-        int remaining = image.length - (pageIndex * pageSize);
+
+    /**
+     * Copies the payload of the given page into dest, starting at destOffset.
+     *
+     * @param pageIndex
+     *            of the page that is to be copied
+     * @param dest
+     *            array the page is copied to
+     * @param destOffset
+     *            position in dest the page starts at
+     * @return number of bytes copied
+     */
+    public int copyPage(int pageIndex, byte[] dest, int destOffset) {
+        int length = pageLength(pageIndex);
+        if (length > 0) {
+            int start = pageIndex * pageSize;
+            if (image != null) {
+                System.arraycopy(image, offset + start, dest, destOffset, length);
+            }
+            else {
+                // absolute gets leave the shared buffer untouched without allocating a duplicate per page
+                for (int i = 0; i < length; i++) {
+                    dest[destOffset + i] = buffer.get(start + i);
+                }
+            }
+        }
+        return length;
+    }
+
+    public int pageLength(int pageIndex) {
+        int remaining = length - (pageIndex * pageSize);
         if (remaining > pageSize) {
             return pageSize;
         }
@@ -37,14 +91,30 @@ public class ImageData {
     }
 
     public int pageCount() {
-        int count = image.length / pageSize;
-        if (image.length % pageSize != 0) {
+        int count = length / pageSize;
+        if (length % pageSize != 0) {
             return count + 1;
         }
         return count;
     }
 
+    public int getPageSize() {
+        return pageSize;
+    }
+
     public int length() {
-        return image.length;
+        return length;
+    }
+
+    /**
+     * Returns the image bytes as a read-only buffer without copying them.
+     *
+     * @return buffer positioned at the first image byte
+     */
+    public ByteBuffer asByteBuffer() {
+        if (image != null) {
+            return ByteBuffer.wrap(image, offset, length).slice().asReadOnlyBuffer();
+        }
+        return buffer.duplicate();
     }
 }
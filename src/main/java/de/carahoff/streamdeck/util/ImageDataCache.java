@@ -0,0 +1,157 @@
+package de.carahoff.streamdeck.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of device-ready {@link ImageData}, keyed by the image format of a device model and the
+ * {@link ImageUtils#fingerprint(java.awt.Image) fingerprint} of the source pixels.
+ */
+public class ImageDataCache {
+    private final int maxEntries;
+    private final Map<Key, ImageData> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ImageDataCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache must hold at least one entry");
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<Key, ImageData>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, ImageData> eldest) {
+                if (size() > ImageDataCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached ImageData or null if there is none.
+     *
+     * @param format
+     *            key of the device model specific image format
+     * @param fingerprint
+     *            of the source pixels
+     * @return cached ImageData or null
+     */
+    public ImageData get(String format, long fingerprint) {
+        ImageData imageData;
+        Key key = new Key(format, fingerprint);
+        synchronized (entries) {
+            imageData = entries.get(key);
+        }
+        if (imageData == null) {
+            imageData = load(format, fingerprint);
+            if (imageData != null) {
+                synchronized (entries) {
+                    entries.put(key, imageData);
+                }
+            }
+        }
+        if (imageData == null) {
+            misses.incrementAndGet();
+        }
+        else {
+            hits.incrementAndGet();
+        }
+        return imageData;
+    }
+
+    public void put(String format, long fingerprint, ImageData imageData) {
+        synchronized (entries) {
+            entries.put(new Key(format, fingerprint), imageData);
+        }
+        store(format, fingerprint, imageData);
+    }
+
+    /**
+     * Loads ImageData that is not held in memory from a second tier, e.g. a file. The loaded ImageData is kept in
+     * memory afterwards. The default implementation has no second tier.
+     *
+     * @param format
+     *            key of the device model specific image format
+     * @param fingerprint
+     *            of the source pixels
+     * @return loaded ImageData or null
+     */
+    protected ImageData load(String format, long fingerprint) {
+        return null;
+    }
+
+    /**
+     * Stores ImageData that was put into this cache in a second tier. The default implementation has no second tier.
+     *
+     * @param format
+     *            key of the device model specific image format
+     * @param fingerprint
+     *            of the source pixels
+     * @param imageData
+     *            that was put
+     */
+    protected void store(String format, long fingerprint, ImageData imageData) {
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    static final class Key {
+        private final String format;
+        private final long fingerprint;
+
+        Key(String format, long fingerprint) {
+            this.format = format;
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return fingerprint == other.fingerprint && format.equals(other.format);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * format.hashCode() + Long.hashCode(fingerprint);
+        }
+    }
+}
@@ -1,17 +1,33 @@
 package de.carahoff.streamdeck.util;
 
+import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.geom.AffineTransform;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import javax.imageio.ImageIO;
 
+import de.carahoff.streamdeck.encoder.ImageIOJpegEncoder;
+
 public class ImageUtils {
+    /**
+     * Version of the {@link #fingerprint(Image) fingerprint} function. It changes whenever images get different
+     * fingerprints than before, so fingerprints that were stored, e.g. in a {@link PersistentImageDataCache}, can be
+     * discarded.
+     */
+    public static final int FINGERPRINT_VERSION = 2;
+    private static final long FINGERPRINT_OFFSET = 0xcbf29ce484222325L;
+    private static final long FINGERPRINT_PRIME = 0x100000001b3L;
+
     public static Image flipHorizontally(Image originalImage) {
         BufferedImage bufferedImage = toBufferedImage(originalImage);
 
@@ -36,11 +52,11 @@ public class ImageUtils {
         return bufferedImage;
     }
 
-    public static Image flipHorizontallyAndVertically(Image originalImage) {
+    public static Image rotateCounterclockwise(Image originalImage) {
         BufferedImage bufferedImage = toBufferedImage(originalImage);
 
-        AffineTransform tx = AffineTransform.getScaleInstance(-1, -1);
-        tx.translate(-bufferedImage.getWidth(null), -bufferedImage.getHeight(null));
+        AffineTransform tx = AffineTransform.getQuadrantRotateInstance(3);
+        tx.translate(-bufferedImage.getWidth(null), 0);
 
         AffineTransformOp op = new AffineTransformOp(tx, AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
         bufferedImage = op.filter(bufferedImage, null);
@@ -48,18 +64,171 @@ public class ImageUtils {
         return bufferedImage;
     }
 
-    public static byte[] convertToJPGByteArray(Image image) {
-        BufferedImage bufferedImage = toBufferedImage(image);
+    public static Image flipHorizontallyAndVertically(Image originalImage) {
+        return rotate180(originalImage, null);
+    }
 
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    /**
+     * Rotates the given image by 180 degrees into dest. BGR and INT RGB images are copied pixel by pixel from their
+     * rasters, all other images are drawn rotated in one step, so no intermediate image is created either way.
+     * Transparent pixels are composed onto black, as {@link #toBufferedImage(Image)} does.
+     * 
+     * @param image
+     *            that is to be rotated
+     * @param dest
+     *            TYPE_3BYTE_BGR image of the same size that is overwritten, a new image is created if it is null or
+     *            does not fit
+     * @return the rotated image, dest if it was used
+     */
+    public static BufferedImage rotate180(Image image, BufferedImage dest) {
+        int width = image.getWidth(null);
+        int height = image.getHeight(null);
+        dest = fittingBgrImage(width, height, dest);
+        byte[] target = ((DataBufferByte) dest.getRaster().getDataBuffer()).getData();
 
-        try {
-            ImageIO.write(bufferedImage, "jpeg", byteArrayOutputStream);
-        } catch (IOException ex) {
-            throw new RuntimeException(ex);
+        // Source rows are read through the raster, so sub images work and the source image stays managed
+        int type = image instanceof BufferedImage ? ((BufferedImage) image).getType() : BufferedImage.TYPE_CUSTOM;
+        if (type == BufferedImage.TYPE_3BYTE_BGR) {
+            Raster raster = ((BufferedImage) image).getRaster();
+            // Data elements are returned in band order R, G, B while the target stores B, G, R
+            byte[] row = new byte[width * 3];
+            for (int y = 0; y < height; y++) {
+                raster.getDataElements(0, y, width, 1, row);
+                int out = ((height - 1 - y) * width + width - 1) * 3;
+                for (int x = 0; x < row.length; x += 3) {
+                    target[out] = row[x + 2];
+                    target[out + 1] = row[x + 1];
+                    target[out + 2] = row[x];
+                    out -= 3;
+                }
+            }
+            return dest;
         }
+        if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) {
+            Raster raster = ((BufferedImage) image).getRaster();
+            boolean alpha = type == BufferedImage.TYPE_INT_ARGB;
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                raster.getDataElements(0, y, width, 1, row);
+                int out = ((height - 1 - y) * width + width - 1) * 3;
+                for (int x = 0; x < width; x++) {
+                    int pixel = row[x];
+                    int r = (pixel >> 16) & 0xff;
+                    int g = (pixel >> 8) & 0xff;
+                    int b = pixel & 0xff;
+                    if (alpha) {
+                        int a = pixel >>> 24;
+                        r = (r * a + 127) / 255;
+                        g = (g * a + 127) / 255;
+                        b = (b * a + 127) / 255;
+                    }
+                    target[out] = (byte) b;
+                    target[out + 1] = (byte) g;
+                    target[out + 2] = (byte) r;
+                    out -= 3;
+                }
+            }
+            return dest;
+        }
+
+        Graphics2D g2d = dest.createGraphics();
+        g2d.setColor(Color.BLACK);
+        g2d.fillRect(0, 0, width, height);
+        g2d.drawImage(image, width, height, 0, 0, 0, 0, width, height, null);
+        g2d.dispose();
+        return dest;
+    }
+
+    /**
+     * Rotates the given pixels by 180 degrees into dest, reading them straight from their array or buffer.
+     * Transparent pixels are composed onto black.
+     * 
+     * @param pixels
+     *            that are to be rotated
+     * @param dest
+     *            TYPE_3BYTE_BGR image of the same size that is overwritten, a new image is created if it is null or
+     *            does not fit
+     * @return the rotated image, dest if it was used
+     */
+    public static BufferedImage rotate180(PixelData pixels, BufferedImage dest) {
+        dest = fittingBgrImage(pixels.getWidth(), pixels.getHeight(), dest);
+        writeBgr(pixels, ((DataBufferByte) dest.getRaster().getDataBuffer()).getData(), true);
+        return dest;
+    }
 
-        return byteArrayOutputStream.toByteArray();
+    /**
+     * Copies the given pixels into a new TYPE_3BYTE_BGR image. Transparent pixels are composed onto black.
+     * 
+     * @param pixels
+     *            that are to be copied
+     * @return new image holding a copy of the pixels
+     */
+    public static BufferedImage toBufferedImage(PixelData pixels) {
+        BufferedImage image = new BufferedImage(pixels.getWidth(), pixels.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+        writeBgr(pixels, ((DataBufferByte) image.getRaster().getDataBuffer()).getData(), false);
+        return image;
+    }
+
+    private static BufferedImage fittingBgrImage(int width, int height, BufferedImage dest) {
+        if (dest == null || dest.getType() != BufferedImage.TYPE_3BYTE_BGR || dest.getWidth() != width || dest.getHeight() != height
+                || dest.getRaster().getParent() != null) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        }
+        return dest;
+    }
+
+    /**
+     * Writes the pixels as B, G, R bytes into target, either as they are or rotated by 180 degrees.
+     */
+    private static void writeBgr(PixelData pixels, byte[] target, boolean rotate) {
+        int width = pixels.getWidth();
+        int height = pixels.getHeight();
+        int[] ints = pixels.getInts();
+        byte[] bytes = pixels.getBytes();
+        ByteBuffer buffer = pixels.getBuffer();
+        boolean alpha = pixels.getFormat() == PixelData.Format.INT_ARGB;
+        int step = rotate ? -3 : 3;
+        for (int y = 0; y < height; y++) {
+            int in = pixels.getOffset() + y * pixels.getStride();
+            int out = rotate ? ((height - 1 - y) * width + width - 1) * 3 : y * width * 3;
+            if (pixels.getFormat() == PixelData.Format.BYTE_BGR) {
+                for (int x = 0; x < width; x++) {
+                    if (bytes != null) {
+                        target[out] = bytes[in];
+                        target[out + 1] = bytes[in + 1];
+                        target[out + 2] = bytes[in + 2];
+                    }
+                    else {
+                        target[out] = buffer.get(in);
+                        target[out + 1] = buffer.get(in + 1);
+                        target[out + 2] = buffer.get(in + 2);
+                    }
+                    in += 3;
+                    out += step;
+                }
+                continue;
+            }
+            for (int x = 0; x < width; x++) {
+                int pixel = ints != null ? ints[in + x] : buffer.getInt(in + x * 4);
+                int r = (pixel >> 16) & 0xff;
+                int g = (pixel >> 8) & 0xff;
+                int b = pixel & 0xff;
+                if (alpha) {
+                    int a = pixel >>> 24;
+                    r = (r * a + 127) / 255;
+                    g = (g * a + 127) / 255;
+                    b = (b * a + 127) / 255;
+                }
+                target[out] = (byte) b;
+                target[out + 1] = (byte) g;
+                target[out + 2] = (byte) r;
+                out += step;
+            }
+        }
+    }
+
+    public static byte[] convertToJPGByteArray(Image image) {
+        return ImageIOJpegEncoder.DEFAULT.encode(toBufferedImage(image));
     }
 
     public static BufferedImage toBufferedImage(Image image) {
@@ -74,6 +243,129 @@ public class ImageUtils {
         return bufferedImage;
     }
 
+    /**
+     * Computes a 64 bit hash over the dimensions, type and pixels of the given image. Images with equal pixels and
+     * equal type have the same fingerprint. The palette of indexed images is part of the hash, images of a custom
+     * type are hashed by their ARGB colors, as their raster alone does not define the colors.
+     * 
+     * @param image
+     *            that is to be hashed
+     * @return fingerprint of the image
+     */
+    public static long fingerprint(Image image) {
+        BufferedImage bufferedImage = image instanceof BufferedImage ? (BufferedImage) image : toBufferedImage(image);
+        int width = bufferedImage.getWidth();
+        int height = bufferedImage.getHeight();
+        int type = bufferedImage.getType();
+        long hash = mix(mix(mix(FINGERPRINT_OFFSET, width), height), type);
+        if (bufferedImage.getColorModel() instanceof IndexColorModel) {
+            IndexColorModel palette = (IndexColorModel) bufferedImage.getColorModel();
+            int[] colors = new int[palette.getMapSize()];
+            palette.getRGBs(colors);
+            hash = mix(hash, colors.length);
+            for (int color : colors) {
+                hash = mix(hash, color);
+            }
+        }
+
+        // Rows are read through the raster so sub images are hashed correctly and the image stays managed
+        Raster raster = bufferedImage.getRaster();
+        int elements = raster.getNumDataElements();
+        switch (type == BufferedImage.TYPE_CUSTOM ? DataBuffer.TYPE_UNDEFINED : raster.getTransferType()) {
+            case DataBuffer.TYPE_BYTE:
+                byte[] byteRow = new byte[width * elements];
+                for (int y = 0; y < height; y++) {
+                    raster.getDataElements(0, y, width, 1, byteRow);
+                    for (byte value : byteRow) {
+                        hash = mix(hash, value);
+                    }
+                }
+                break;
+            case DataBuffer.TYPE_INT:
+                int[] intRow = new int[width * elements];
+                for (int y = 0; y < height; y++) {
+                    raster.getDataElements(0, y, width, 1, intRow);
+                    for (int value : intRow) {
+                        hash = mix(hash, value);
+                    }
+                }
+                break;
+            default:
+                int[] rgbRow = new int[width];
+                for (int y = 0; y < height; y++) {
+                    bufferedImage.getRGB(0, y, width, 1, rgbRow, 0, width);
+                    for (int value : rgbRow) {
+                        hash = mix(hash, value);
+                    }
+                }
+        }
+        return finish(hash);
+    }
+
+    /**
+     * Computes the fingerprint of the given pixels. Pixels have the same fingerprint as a BufferedImage of the
+     * matching type, TYPE_INT_ARGB, TYPE_INT_RGB or TYPE_3BYTE_BGR, holding the same pixels.
+     * 
+     * @param pixels
+     *            that are to be hashed
+     * @return fingerprint of the pixels
+     */
+    public static long fingerprint(PixelData pixels) {
+        int width = pixels.getWidth();
+        int height = pixels.getHeight();
+        int type;
+        switch (pixels.getFormat()) {
+            case INT_ARGB:
+                type = BufferedImage.TYPE_INT_ARGB;
+                break;
+            case INT_RGB:
+                type = BufferedImage.TYPE_INT_RGB;
+                break;
+            default:
+                type = BufferedImage.TYPE_3BYTE_BGR;
+        }
+        long hash = mix(mix(mix(FINGERPRINT_OFFSET, width), height), type);
+
+        int[] ints = pixels.getInts();
+        byte[] bytes = pixels.getBytes();
+        ByteBuffer buffer = pixels.getBuffer();
+        int mask = type == BufferedImage.TYPE_INT_RGB ? 0xffffff : 0xffffffff;
+        for (int y = 0; y < height; y++) {
+            int in = pixels.getOffset() + y * pixels.getStride();
+            if (type == BufferedImage.TYPE_3BYTE_BGR) {
+                // Hashed in the band order R, G, B in which the raster of a BGR image returns its data elements
+                for (int x = 0; x < width; x++) {
+                    if (bytes != null) {
+                        hash = mix(mix(mix(hash, bytes[in + 2]), bytes[in + 1]), bytes[in]);
+                    }
+                    else {
+                        hash = mix(mix(mix(hash, buffer.get(in + 2)), buffer.get(in + 1)), buffer.get(in));
+                    }
+                    in += 3;
+                }
+                continue;
+            }
+            for (int x = 0; x < width; x++) {
+                int pixel = ints != null ? ints[in + x] : buffer.getInt(in + x * 4);
+                hash = mix(hash, pixel & mask);
+            }
+        }
+        return finish(hash);
+    }
+
+    private static long mix(long hash, int value) {
+        return (hash ^ value) * FINGERPRINT_PRIME;
+    }
+
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
     public static BufferedImage loadImage(String imageName) throws IOException {
         // Assuming the resources folder is in the classpath
         ClassLoader classLoader = ImageUtils.class.getClassLoader();
@@ -0,0 +1,303 @@
+package de.carahoff.streamdeck.util;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * {@link ImageDataCache} that additionally keeps every device-ready image in a file, so images encoded in an earlier
+ * run are not encoded again. The file is memory-mapped and ImageData loaded from it is a slice of the mapping, its
+ * pages are copied from the mapping straight into the report.
+ * <p>
+ * Entries are appended to the file and indexed by image format and fingerprint when the cache is opened. A
+ * truncated or corrupted tail, e.g. after a crash, is ignored and overwritten. The file header records the
+ * {@link ImageUtils#FINGERPRINT_VERSION}, a file written with another file or fingerprint version is discarded, as its
+ * images would be found under fingerprints of different images. Only one process writes to the file, a cache opened
+ * while another process holds the file is read-only.
+ */
+public class PersistentImageDataCache extends ImageDataCache implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(PersistentImageDataCache.class.getName());
+    private static final int FILE_MAGIC = 0x53444943;
+    private static final int FILE_VERSION = 2;
+    // magic, file version, fingerprint version
+    private static final int FILE_HEADER_SIZE = 4 + 4 + 4;
+    private static final int RECORD_MAGIC = 0x53444931;
+    // magic, fingerprint, page size, format length
+    private static final int RECORD_HEADER_SIZE = 4 + 8 + 4 + 2;
+    // payload length, payload CRC
+    private static final int PAYLOAD_HEADER_SIZE = 4 + 4;
+    private static final long DEFAULT_MAX_FILE_SIZE = 64L * 1024 * 1024;
+
+    private final Path path;
+    private final long maxFileSize;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final Map<Key, Entry> index = new HashMap<>();
+    private ByteBuffer mapping;
+    private long fileEnd;
+
+    /**
+     * Opens the cache file at the given path, creating it if it does not exist, with a maximum file size of 64 MB.
+     *
+     * @param path
+     *            of the cache file
+     * @param maxEntries
+     *            number of images held in memory
+     * @throws IOException
+     *             if the file cannot be opened or is not a cache file
+     */
+    public PersistentImageDataCache(Path path, int maxEntries) throws IOException {
+        this(path, maxEntries, DEFAULT_MAX_FILE_SIZE);
+    }
+
+    /**
+     * Opens the cache file at the given path, creating it if it does not exist.
+     *
+     * @param path
+     *            of the cache file
+     * @param maxEntries
+     *            number of images held in memory
+     * @param maxFileSize
+     *            size in bytes the file does not grow beyond, further images are only cached in memory
+     * @throws IOException
+     *             if the file cannot be opened or is not a cache file
+     */
+    public PersistentImageDataCache(Path path, int maxEntries, long maxFileSize) throws IOException {
+        super(maxEntries);
+        if (maxFileSize < FILE_HEADER_SIZE || maxFileSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Maximum file size must be between " + FILE_HEADER_SIZE + " bytes and 2 GB");
+        }
+        this.path = path;
+        this.maxFileSize = maxFileSize;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            this.lock = tryLock(channel);
+            open();
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns whether images put into this cache are written to the file. A cache whose file is held by another
+     * process only reads from it.
+     *
+     * @return true if images are written to the file
+     */
+    public boolean isWritable() {
+        return lock != null;
+    }
+
+    /**
+     * Returns the number of images stored in the file.
+     *
+     * @return number of file entries
+     */
+    public int getFileEntries() {
+        synchronized (index) {
+            return index.size();
+        }
+    }
+
+    public long getFileSize() {
+        synchronized (index) {
+            return fileEnd;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (index) {
+            index.clear();
+            mapping = null;
+            fileEnd = 0;
+        }
+        channel.close();
+    }
+
+    @Override
+    protected ImageData load(String format, long fingerprint) {
+        synchronized (index) {
+            Entry entry = index.get(new Key(format, fingerprint));
+            if (entry == null) {
+                return null;
+            }
+            try {
+                if (mapping == null || entry.offset + entry.length > mapping.capacity()) {
+                    mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileEnd);
+                }
+            }
+            catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Unable to map image cache file " + path, e);
+                return null;
+            }
+            ByteBuffer payload = mapping.duplicate();
+            ((Buffer) payload).limit((int) entry.offset + entry.length);
+            ((Buffer) payload).position((int) entry.offset);
+            return new ImageData(payload, entry.pageSize);
+        }
+    }
+
+    @Override
+    protected void store(String format, long fingerprint, ImageData imageData) {
+        if (lock == null) {
+            return;
+        }
+        Key key = new Key(format, fingerprint);
+        ByteBuffer payload = imageData.asByteBuffer();
+        byte[] formatBytes = format.getBytes(StandardCharsets.UTF_8);
+        synchronized (index) {
+            if (!channel.isOpen() || index.containsKey(key)) {
+                return;
+            }
+            int recordSize = RECORD_HEADER_SIZE + formatBytes.length + PAYLOAD_HEADER_SIZE + payload.remaining();
+            if (fileEnd + recordSize > maxFileSize || formatBytes.length > Short.MAX_VALUE) {
+                return;
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE + formatBytes.length + PAYLOAD_HEADER_SIZE);
+            header.putInt(RECORD_MAGIC);
+            header.putLong(fingerprint);
+            header.putInt(imageData.getPageSize());
+            header.putShort((short) formatBytes.length);
+            header.put(formatBytes);
+            header.putInt(payload.remaining());
+            header.putInt((int) crc.getValue());
+            ((Buffer) header).flip();
+
+            long payloadOffset = fileEnd + header.remaining();
+            try {
+                writeFully(header, fileEnd);
+                writeFully(payload.duplicate(), payloadOffset);
+            }
+            catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Unable to write image cache file " + path, e);
+                return;
+            }
+            index.put(key, new Entry(payloadOffset, payload.remaining(), imageData.getPageSize()));
+            fileEnd += recordSize;
+        }
+    }
+
+    /**
+     * Reads the index of all complete entries. A file that ends in a partial entry continues after the last
+     * complete one. A file of another file or fingerprint version is emptied, or ignored if the cache is read-only.
+     */
+    private void open() throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Image cache file " + path + " is too large");
+        }
+        if (size < 4) {
+            reset(size);
+            return;
+        }
+
+        ByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (file.getInt() != FILE_MAGIC) {
+            throw new IOException(path + " is not an image cache file");
+        }
+        if (size < FILE_HEADER_SIZE || file.getInt() != FILE_VERSION || file.getInt() != ImageUtils.FINGERPRINT_VERSION) {
+            reset(size);
+            return;
+        }
+        long end = FILE_HEADER_SIZE;
+        while (file.remaining() >= RECORD_HEADER_SIZE) {
+            if (file.getInt() != RECORD_MAGIC) {
+                break;
+            }
+            long fingerprint = file.getLong();
+            int pageSize = file.getInt();
+            int formatLength = file.getShort();
+            if (pageSize < 1 || formatLength < 0 || file.remaining() < formatLength + PAYLOAD_HEADER_SIZE) {
+                break;
+            }
+            byte[] formatBytes = new byte[formatLength];
+            file.get(formatBytes);
+            int payloadLength = file.getInt();
+            int payloadCrc = file.getInt();
+            if (payloadLength < 0 || file.remaining() < payloadLength) {
+                break;
+            }
+            int payloadOffset = file.position();
+            ByteBuffer payload = file.duplicate();
+            ((Buffer) payload).limit(payloadOffset + payloadLength);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != payloadCrc) {
+                break;
+            }
+            ((Buffer) file).position(payloadOffset + payloadLength);
+            String format = new String(formatBytes, StandardCharsets.UTF_8);
+            index.put(new Key(format, fingerprint), new Entry(payloadOffset, payloadLength, pageSize));
+            end = file.position();
+        }
+        mapping = file;
+        fileEnd = end;
+    }
+
+    /**
+     * Empties the file and writes the header of this version, unless the cache is read-only.
+     */
+    private void reset(long size) throws IOException {
+        if (lock == null) {
+            fileEnd = size;
+            return;
+        }
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(FILE_MAGIC);
+        header.putInt(FILE_VERSION);
+        header.putInt(ImageUtils.FINGERPRINT_VERSION);
+        ((Buffer) header).flip();
+        writeFully(header, 0);
+        fileEnd = FILE_HEADER_SIZE;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        }
+        catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    private static final class Entry {
+        private final long offset;
+        private final int length;
+        private final int pageSize;
+
+        private Entry(long offset, int length, int pageSize) {
+            this.offset = offset;
+            this.length = length;
+            this.pageSize = pageSize;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package de.carahoff.streamdeck.util;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Raw pixels of a key image in an int array, a byte array or a ByteBuffer, so renderers that do not use
+ * java.awt.Image can hand their frame buffer to a StreamDeck as it is. Rows may be padded, the stride gives the
+ * distance between the starts of two rows. The pixels are not copied, they must not change while a StreamDeck
+ * prepares them.
+ */
+public final class PixelData {
+
+    public enum Format {
+        /**
+         * One int per pixel holding alpha, red, green and blue from the most to the least significant byte.
+         * Transparent pixels are composed onto black.
+         */
+        INT_ARGB(4),
+        /**
+         * One int per pixel holding red, green and blue in the lower three bytes, the upper byte is ignored.
+         */
+        INT_RGB(4),
+        /**
+         * Three bytes per pixel in the order blue, green, red.
+         */
+        BYTE_BGR(3);
+
+        private final int bytesPerPixel;
+
+        private Format(int bytesPerPixel) {
+            this.bytesPerPixel = bytesPerPixel;
+        }
+
+        public int getBytesPerPixel() {
+            return bytesPerPixel;
+        }
+    }
+
+    private final Format format;
+    private final int width;
+    private final int height;
+    private final int offset;
+    private final int stride;
+    private final int[] ints;
+    private final byte[] bytes;
+    private final ByteBuffer buffer;
+
+    private PixelData(Format format, int width, int height, int offset, int stride, int[] ints, byte[] bytes,
+            ByteBuffer buffer) {
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.offset = offset;
+        this.stride = stride;
+        this.ints = ints;
+        this.bytes = bytes;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Wraps tightly packed ARGB pixels.
+     *
+     * @param pixels
+     *            one int per pixel, row by row
+     * @param width
+     *            of the image
+     * @param height
+     *            of the image
+     * @return pixel data backed by the array
+     */
+    public static PixelData ofArgb(int[] pixels, int width, int height) {
+        return ofInts(Format.INT_ARGB, pixels, 0, width, height, width);
+    }
+
+    /**
+     * Wraps ARGB pixels with the given row stride.
+     *
+     * @param pixels
+     *            one int per pixel
+     * @param offset
+     *            index of the top left pixel
+     * @param width
+     *            of the image
+     * @param height
+     *            of the image
+     * @param stride
+     *            number of ints from the start of one row to the next
+     * @return pixel data backed by the array
+     */
+    public static PixelData ofArgb(int[] pixels, int offset, int width, int height, int stride) {
+        return ofInts(Format.INT_ARGB, pixels, offset, width, height, stride);
+    }
+
+    /**
+     * Wraps tightly packed RGB pixels.
+     *
+     * @param pixels
+     *            one int per pixel, row by row
+     * @param width
+     *            of the image
+     * @param height
+     *            of the image
+     * @return pixel data backed by the array
+     */
+    public static PixelData ofRgb(int[] pixels, int width, int height) {
+        return ofInts(Format.INT_RGB, pixels, 0, width, height, width);
+    }
+
+    /**
+     * Wraps RGB pixels with the given row stride.
+     *
+     * @param pixels
+     *            one int per pixel
+     * @param offset
+     *            index of the top left pixel
+     * @param width
+     *            of the image
+     * @param height
+     *            of the image
+     * @param stride
+     *            number of ints from the start of one row to the next
+     * @return pixel data backed by the array
+     */
+    public static PixelData ofRgb(int[] pixels, int offset, int width, int height, int stride) {
+        return ofInts(Format.INT_RGB, pixels, offset, width, height, stride);
+    }
+
+    /**
+     * Wraps tightly packed BGR pixels.
+     *
+     * @param pixels
+     *            three bytes per pixel, row by row
+     * @param width
+     *            of the image
+     * @param height
+     *            of the image
+     * @return pixel data backed by the array
+     */
+    public static PixelData ofBgr(byte[] pixels, int width, int height) {
+        return ofBgr(pixels, 0, width, height, width * 3);
+    }
+
+    /**
+     * Wraps BGR pixels with the given row stride.
+     *
+     * @param pixels
+     *            three bytes per pixel
+     * @param offset
+     *            index of the first byte of the top left pixel
+     * @param width
+     *            of the image
+     * @param height
+     *            of the image
+     * @param stride
+     *            number of bytes from the start of one row to the next
+     * @return pixel data backed by the array
+     */
+    public static PixelData ofBgr(byte[] pixels, int offset, int width, int height, int stride) {
+        checkBounds(pixels.length, offset, width * 3, height, stride);
+        return new PixelData(Format.BYTE_BGR, width, height, offset, stride, null, pixels, null);
+    }
+
+    /**
+     * Wraps the pixels in the given buffer, starting at its position. Pixels in an int format are read with the byte
+     * order of the buffer, e.g. a little endian buffer holds ARGB pixels in the order blue, green, red, alpha.
+     *
+     * @param pixels
+     *            buffer holding the pixels from its position on
+     * @param format
+     *            of the pixels
+     * @param width
+     *            of the image
+     * @param height
+     *            of the image
+     * @param stride
+     *            number of bytes from the start of one row to the next
+     * @return pixel data backed by the buffer
+     */
+    public static PixelData of(ByteBuffer pixels, Format format, int width, int height, int stride) {
+        checkBounds(pixels.limit(), pixels.position(), width * format.getBytesPerPixel(), height, stride);
+        return new PixelData(format, width, height, pixels.position(), stride, null, null,
+                pixels.duplicate().order(pixels.order()));
+    }
+
+    private static PixelData ofInts(Format format, int[] pixels, int offset, int width, int height, int stride) {
+        checkBounds(pixels.length, offset, width, height, stride);
+        return new PixelData(format, width, height, offset, stride, pixels, null, null);
+    }
+
+    private static void checkBounds(int length, int offset, int rowLength, int height, int stride) {
+        if (rowLength < 1 || height < 1) {
+            throw new IllegalArgumentException("Pixel data must not be empty");
+        }
+        if (offset < 0 || stride < rowLength || (long) offset + (long) (height - 1) * stride + rowLength > length) {
+            throw new IllegalArgumentException("Pixel data out of bounds");
+        }
+    }
+
+    /**
+     * Copies the pixels into new tightly packed storage of the same format, so the copy stays valid when the source
+     * pixels change.
+     *
+     * @return pixel data backed by its own array or buffer
+     */
+    public PixelData copy() {
+        if (ints != null) {
+            int[] copy = new int[width * height];
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(ints, offset + y * stride, copy, y * width, width);
+            }
+            return new PixelData(format, width, height, 0, width, copy, null, null);
+        }
+        int rowLength = width * format.getBytesPerPixel();
+        if (bytes != null) {
+            byte[] copy = new byte[rowLength * height];
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(bytes, offset + y * stride, copy, y * rowLength, rowLength);
+            }
+            return new PixelData(format, width, height, 0, rowLength, null, copy, null);
+        }
+        ByteBuffer copy = ByteBuffer.allocate(rowLength * height).order(buffer.order());
+        ByteBuffer row = buffer.duplicate();
+        for (int y = 0; y < height; y++) {
+            int start = offset + y * stride;
+            ((Buffer) row).limit(start + rowLength);
+            ((Buffer) row).position(start);
+            copy.put(row);
+        }
+        ((Buffer) copy).flip();
+        return new PixelData(format, width, height, 0, rowLength, null, null, copy);
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    int getStride() {
+        return stride;
+    }
+
+    int[] getInts() {
+        return ints;
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+}
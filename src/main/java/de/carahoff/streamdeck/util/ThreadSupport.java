@@ -0,0 +1,109 @@
+package de.carahoff.streamdeck.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the threads StreamDecks read keys, write images, deliver events and run timers on. On Java 21 and newer
+ * they can be virtual threads, so a process driving many decks does not need an operating system thread for each of
+ * them. Virtual threads are used if the system property {@value #VIRTUAL_THREADS_PROPERTY} is true or
+ * {@link #setVirtualThreads(boolean)} enabled them; the mode applies to threads created afterwards.
+ * <p>
+ * This is the implementation for Java 8 to 20, which only creates platform threads: enabling virtual threads falls
+ * back to them, check {@link #isVirtualThreadsSupported()} to tell. The multi-release jar contains another
+ * implementation for Java 21.
+ */
+public final class ThreadSupport {
+    public static final String VIRTUAL_THREADS_PROPERTY = "de.carahoff.streamdeck.virtualThreads";
+
+    private ThreadSupport() {
+    }
+
+    /**
+     * Returns whether this JVM supports virtual threads.
+     *
+     * @return true on Java 21 and newer
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return false;
+    }
+
+    /**
+     * Returns whether threads created from now on are virtual threads.
+     *
+     * @return true if virtual threads are used
+     */
+    public static boolean isVirtualThreads() {
+        return false;
+    }
+
+    /**
+     * Selects whether threads created from now on are virtual threads. This JVM does not support them, so platform
+     * threads are created either way.
+     *
+     * @param virtualThreads
+     *            true to use virtual threads
+     */
+    public static void setVirtualThreads(boolean virtualThreads) {
+    }
+
+    /**
+     * Returns whether the given thread is a virtual thread.
+     *
+     * @param thread
+     *            that is checked
+     * @return true if the thread is virtual
+     */
+    public static boolean isVirtual(Thread thread) {
+        return false;
+    }
+
+    /**
+     * Creates a thread that is not started yet. Virtual threads are always daemon threads.
+     *
+     * @param task
+     *            run by the thread
+     * @param name
+     *            of the thread
+     * @param daemon
+     *            whether a platform thread is a daemon thread
+     * @return new thread
+     */
+    public static Thread newThread(Runnable task, String name, boolean daemon) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(daemon);
+        return thread;
+    }
+
+    /**
+     * Returns a factory for daemon threads with the given name, e.g. for timer executors.
+     *
+     * @param name
+     *            of the threads
+     * @return thread factory
+     */
+    public static ThreadFactory newThreadFactory(String name) {
+        return task -> newThread(task, name, true);
+    }
+
+    /**
+     * Creates an executor for short tasks such as event delivery: a cached thread pool, or a new virtual thread per
+     * task.
+     *
+     * @return new executor
+     */
+    public static ExecutorService newTaskExecutor() {
+        return Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Creates an executor that runs each task on a new virtual thread, regardless of the selected mode. This JVM does
+     * not support virtual threads, so it is a cached thread pool instead.
+     *
+     * @return new executor
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        return Executors.newCachedThreadPool();
+    }
+}
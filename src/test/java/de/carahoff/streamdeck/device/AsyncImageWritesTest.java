@@ -0,0 +1,129 @@
+package de.carahoff.streamdeck.device;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import de.carahoff.streamdeck.elgato.StreamDeckMK2;
+import de.carahoff.streamdeck.simulation.SimulatedHidTransport;
+
+/**
+ * Checks the queued image writes of a deck on the simulated MK2: bursts on one key are coalesced into one write and
+ * writes the device does not take fail their futures.
+ */
+public class AsyncImageWritesTest {
+    private static final int MK2_PIXELS = 72;
+
+    @Test
+    public void burstOnOneKeyWritesOnlyTheLastImage() throws Exception {
+        SimulatedHidTransport transport = new SimulatedHidTransport("SIM");
+        StreamDeckMK2 deck = new StreamDeckMK2(transport);
+        try {
+            deck.setImageCache(null);
+            // Keeps the writer busy with key 1 while the burst on key 0 is queued
+            transport.setWriteLatency(Duration.ofMillis(20));
+            CompletableFuture<Void> busy = deck.setImageAsync(1, keyImage(Color.WHITE));
+
+            List<CompletableFuture<Void>> burst = new ArrayList<>();
+            BufferedImage last = null;
+            for (int i = 0; i < 10; i++) {
+                last = keyImage(new Color(i * 25, 255 - i * 25, 128));
+                burst.add(deck.setImageAsync(0, last));
+            }
+            for (CompletableFuture<Void> future : burst) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+            busy.get(10, TimeUnit.SECONDS);
+
+            assertEquals(2, transport.getFramesCompleted());
+            assertArrayEquals(bytes(deck.prepareImage(last).asByteBuffer()), transport.getFrame(0));
+            assertEquals(0, transport.getOutOfOrderPages());
+        }
+        finally {
+            deck.close();
+        }
+    }
+
+    @Test
+    public void failedWriteFailsTheFutureAndTheSynchronousCall() throws Exception {
+        SimulatedHidTransport transport = new SimulatedHidTransport("SIM");
+        StreamDeckMK2 deck = new StreamDeckMK2(transport);
+        try {
+            BufferedImage image = keyImage(Color.RED);
+            transport.close();
+            try {
+                deck.setImageAsync(0, image).get(10, TimeUnit.SECONDS);
+                fail("Write to a closed device completed normally");
+            }
+            catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            try {
+                deck.setImage(0, image);
+                fail("Write to a closed device returned normally");
+            }
+            catch (IllegalStateException e) {
+                // expected
+            }
+        }
+        finally {
+            deck.close();
+        }
+    }
+
+    @Test
+    public void awareDeckSendsAnImageAgainAfterItsWriteFailed() throws Exception {
+        SimulatedHidTransport transport = new SimulatedHidTransport("SIM");
+        AwareStreamDeck deck = new AwareStreamDeck(new StreamDeckMK2(transport));
+        try {
+            BufferedImage image = keyImage(Color.BLUE);
+            transport.close();
+            try {
+                deck.setImageAsync(0, image).get(10, TimeUnit.SECONDS);
+                fail("Write to a closed device completed normally");
+            }
+            catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+
+            transport.open();
+            deck.setImageAsync(0, image).get(10, TimeUnit.SECONDS);
+            assertEquals(1, transport.getFramesCompleted());
+        }
+        finally {
+            deck.close();
+        }
+    }
+
+    private static BufferedImage keyImage(Color color) {
+        int size = MK2_PIXELS;
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, size, size);
+        g.setColor(Color.BLACK);
+        g.drawLine(0, 0, size - 1, size / 2);
+        g.dispose();
+        return image;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
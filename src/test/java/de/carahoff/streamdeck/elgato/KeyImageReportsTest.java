@@ -0,0 +1,122 @@
+package de.carahoff.streamdeck.elgato;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import de.carahoff.streamdeck.device.BasicHidStreamDeck;
+import de.carahoff.streamdeck.device.HidTransport;
+
+/**
+ * Compares the image reports of the bitmap decks byte for byte with the reports the reference driver sends for the
+ * same image. The expected reports were written by generate_reports.py next to them.
+ */
+public class KeyImageReportsTest {
+
+    @Test
+    public void originalReportsMatchReferenceDriver() throws Exception {
+        assertReports(new StreamDeckOriginal(new CapturingTransport()), 72, "original-key0.bin");
+    }
+
+    @Test
+    public void miniReportsMatchReferenceDriver() throws Exception {
+        assertReports(new StreamDeckMini(new CapturingTransport()), 80, "mini-key0.bin");
+    }
+
+    private static void assertReports(BasicHidStreamDeck deck, int size, String expectedReports) throws Exception {
+        try {
+            deck.setImageCache(null);
+            CapturingTransport transport = (CapturingTransport) deck.getTransport();
+            transport.reports.reset();
+            deck.setImage(0, testImage(size));
+            assertArrayEquals(expectedReports, read(expectedReports), transport.reports.toByteArray());
+        }
+        finally {
+            deck.close();
+        }
+    }
+
+    /**
+     * Image whose pixels all differ, so any flip or rotation changes the bitmap.
+     */
+    private static BufferedImage testImage(int size) {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                image.setRGB(x, y, ((x * 3) & 0xff) << 16 | ((y * 3) & 0xff) << 8 | ((x * y) & 0xff));
+            }
+        }
+        return image;
+    }
+
+    private static byte[] read(String resource) throws IOException {
+        try (InputStream in = KeyImageReportsTest.class.getResourceAsStream(resource)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Records every output report with its report ID, as it would go over USB.
+     */
+    private static final class CapturingTransport implements HidTransport {
+        private final ByteArrayOutputStream reports = new ByteArrayOutputStream();
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public boolean open() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public synchronized int write(byte[] data, int length, byte reportId) {
+            reports.write(reportId);
+            reports.write(data, 0, length);
+            return length + 1;
+        }
+
+        @Override
+        public int read(byte[] data, int timeoutMillis) {
+            try {
+                Thread.sleep(timeoutMillis);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 0;
+        }
+
+        @Override
+        public int getFeatureReport(byte[] data, byte reportId) {
+            return data.length + 1;
+        }
+
+        @Override
+        public int sendFeatureReport(byte[] data, byte reportId) {
+            return data.length + 1;
+        }
+
+        @Override
+        public String getSerialNumber() {
+            return "TEST";
+        }
+    }
+}
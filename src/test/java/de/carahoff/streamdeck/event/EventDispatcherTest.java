@@ -0,0 +1,169 @@
+package de.carahoff.streamdeck.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import de.carahoff.streamdeck.event.EventDispatcher.OverflowPolicy;
+import de.carahoff.streamdeck.event.KeyEvent.Type;
+
+/**
+ * Checks the order events reach each listener in and which events the overflow policies drop.
+ */
+public class EventDispatcherTest {
+
+    @Test
+    public void eachListenerReceivesPressAndReleaseInOrder() throws Exception {
+        int events = 2000;
+        EventDispatcher<KeyListener, KeyEvent> dispatcher = new EventDispatcher<>(KeyListener::onEvent);
+        dispatcher.setCapacity(events);
+        CountDownLatch delivered = new CountDownLatch(2 * events);
+        List<String> fast = Collections.synchronizedList(new ArrayList<>());
+        List<String> slow = Collections.synchronizedList(new ArrayList<>());
+        dispatcher.addListener(event -> {
+            fast.add(describe(event));
+            delivered.countDown();
+        });
+        dispatcher.addListener(event -> {
+            if (event.getIndex() % 100 == 0) {
+                Thread.yield();
+            }
+            slow.add(describe(event));
+            delivered.countDown();
+        });
+
+        List<String> dispatched = new ArrayList<>();
+        for (int i = 0; i < events; i++) {
+            KeyEvent event = new KeyEvent(i / 2 % 15, i % 2 == 0 ? Type.PRESSED : Type.RELEASED);
+            dispatched.add(describe(event));
+            dispatcher.dispatch(event);
+        }
+        try {
+            assertTrue(delivered.await(10, TimeUnit.SECONDS));
+            assertEquals(dispatched, fast);
+            assertEquals(dispatched, slow);
+        }
+        finally {
+            dispatcher.close();
+        }
+    }
+
+    @Test
+    public void dropOldestDiscardsTheOldestQueuedEvent() {
+        ManualExecutor executor = new ManualExecutor();
+        Recorder received = new Recorder();
+        EventDispatcher<Recorder, Integer> dispatcher = fullQueue(executor, received, OverflowPolicy.DROP_OLDEST);
+
+        dispatcher.dispatch(3);
+        executor.runAll();
+
+        assertEquals(Arrays.asList(2, 3), received.events());
+        assertEquals(1, dispatcher.getDroppedEvents(received));
+        dispatcher.close();
+    }
+
+    @Test
+    public void dropNewestDiscardsTheDispatchedEvent() {
+        ManualExecutor executor = new ManualExecutor();
+        Recorder received = new Recorder();
+        EventDispatcher<Recorder, Integer> dispatcher = fullQueue(executor, received, OverflowPolicy.DROP_NEWEST);
+
+        dispatcher.dispatch(3);
+        executor.runAll();
+
+        assertEquals(Arrays.asList(1, 2), received.events());
+        assertEquals(1, dispatcher.getDroppedEvents(received));
+        dispatcher.close();
+    }
+
+    @Test
+    public void blockWaitsUntilTheListenerCaughtUp() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        Recorder received = new Recorder();
+        EventDispatcher<Recorder, Integer> dispatcher = fullQueue(executor, received, OverflowPolicy.BLOCK);
+
+        Thread dispatching = new Thread(() -> dispatcher.dispatch(3), "blocked dispatcher");
+        dispatching.start();
+        dispatching.join(200);
+        assertTrue(dispatching.isAlive());
+        assertEquals(2, dispatcher.getQueueDepth(received));
+
+        executor.runAll();
+        dispatching.join(10000);
+        assertTrue(!dispatching.isAlive());
+        // Event 3 starts a drain of its own if it was queued after the first drain finished
+        executor.runAll();
+
+        assertEquals(Arrays.asList(1, 2, 3), received.events());
+        assertEquals(0, dispatcher.getDroppedEvents(received));
+        dispatcher.close();
+    }
+
+    /**
+     * Creates a dispatcher whose only listener has events 1 and 2 queued and a capacity of two events.
+     */
+    private static EventDispatcher<Recorder, Integer> fullQueue(ManualExecutor executor, Recorder listener,
+            OverflowPolicy policy) {
+        EventDispatcher<Recorder, Integer> dispatcher = new EventDispatcher<>(Recorder::receive);
+        dispatcher.setExecutor(executor);
+        dispatcher.setCapacity(2);
+        dispatcher.setOverflowPolicy(policy);
+        dispatcher.addListener(listener);
+        dispatcher.dispatch(1);
+        dispatcher.dispatch(2);
+        return dispatcher;
+    }
+
+    private static String describe(KeyEvent event) {
+        return event.getIndex() + " " + event.getType();
+    }
+
+    /**
+     * Listener that records the events it received. Listeners are keys of the dispatcher, so it keeps the identity
+     * based equality a list would not have.
+     */
+    private static final class Recorder {
+        private final List<Integer> events = new ArrayList<>();
+
+        private synchronized void receive(Integer event) {
+            events.add(event);
+        }
+
+        private synchronized List<Integer> events() {
+            return new ArrayList<>(events);
+        }
+    }
+
+    /**
+     * Runs the queue drains only when the test asks for it, so events stay queued until then.
+     */
+    private static final class ManualExecutor implements Executor {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public synchronized void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        private void runAll() {
+            Runnable task;
+            while ((task = poll()) != null) {
+                task.run();
+            }
+        }
+
+        private synchronized Runnable poll() {
+            return tasks.poll();
+        }
+    }
+}
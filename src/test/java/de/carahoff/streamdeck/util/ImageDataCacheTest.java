@@ -0,0 +1,52 @@
+package de.carahoff.streamdeck.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Checks the eviction order and the counters of the in-memory cache.
+ */
+public class ImageDataCacheTest {
+    private static final String FORMAT = "test";
+
+    @Test
+    public void evictsTheLeastRecentlyUsedEntry() {
+        ImageDataCache cache = new ImageDataCache(2);
+        ImageData first = imageData(1);
+        ImageData second = imageData(2);
+        ImageData third = imageData(3);
+        cache.put(FORMAT, 1, first);
+        cache.put(FORMAT, 2, second);
+        // Using the first entry makes the second one the least recently used
+        assertSame(first, cache.get(FORMAT, 1));
+        cache.put(FORMAT, 3, third);
+
+        assertNull(cache.get(FORMAT, 2));
+        assertSame(first, cache.get(FORMAT, 1));
+        assertSame(third, cache.get(FORMAT, 3));
+        assertEquals(2, cache.size());
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void keepsFormatsApart() {
+        ImageDataCache cache = new ImageDataCache(4);
+        ImageData imageData = imageData(1);
+        cache.put(FORMAT, 1, imageData);
+
+        assertNull(cache.get("other", 1));
+        assertSame(imageData, cache.get(FORMAT, 1));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    private static ImageData imageData(int value) {
+        return new ImageData(new byte[] { (byte) value, (byte) value }, 16);
+    }
+}
@@ -0,0 +1,104 @@
+package de.carahoff.streamdeck.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that a cache file whose tail was cut off or corrupted re-opens with the entries before the damage.
+ */
+public class PersistentImageDataCacheTest {
+    private static final String FORMAT = "jpeg-72";
+    private static final int PAGE_SIZE = 1016;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void truncatedFileKeepsItsCompleteEntries() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("images.cache");
+        long[] ends = writeEntries(path, 3);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            // Cuts the file in the middle of the third entry
+            channel.truncate((ends[1] + ends[2]) / 2);
+        }
+
+        try (PersistentImageDataCache cache = new PersistentImageDataCache(path, 8)) {
+            assertEquals(2, cache.getFileEntries());
+            assertEquals(ends[1], cache.getFileSize());
+            assertArrayEquals(payload(0), bytes(cache.get(FORMAT, 0)));
+            assertArrayEquals(payload(1), bytes(cache.get(FORMAT, 1)));
+            assertNull(cache.get(FORMAT, 2));
+
+            // The partial entry is overwritten by the next one
+            cache.put(FORMAT, 2, new ImageData(payload(2), PAGE_SIZE));
+        }
+        try (PersistentImageDataCache cache = new PersistentImageDataCache(path, 8)) {
+            assertEquals(3, cache.getFileEntries());
+            assertArrayEquals(payload(2), bytes(cache.get(FORMAT, 2)));
+        }
+    }
+
+    @Test
+    public void corruptedEntryEndsTheValidPrefix() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("images.cache");
+        long[] ends = writeEntries(path, 3);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Flips a byte of the second payload, which ends the entry
+            long position = ends[1] - 1;
+            ByteBuffer data = ByteBuffer.allocate(1);
+            channel.read(data, position);
+            data.put(0, (byte) ~data.get(0));
+            data.rewind();
+            channel.write(data, position);
+        }
+
+        try (PersistentImageDataCache cache = new PersistentImageDataCache(path, 8)) {
+            assertEquals(1, cache.getFileEntries());
+            assertEquals(ends[0], cache.getFileSize());
+            assertArrayEquals(payload(0), bytes(cache.get(FORMAT, 0)));
+            assertNull(cache.get(FORMAT, 1));
+            assertNull(cache.get(FORMAT, 2));
+        }
+    }
+
+    /**
+     * Writes the given number of entries with the fingerprints 0, 1, ... to a new cache file.
+     *
+     * @return end of the file after each entry
+     */
+    private static long[] writeEntries(Path path, int count) throws IOException {
+        long[] ends = new long[count];
+        try (PersistentImageDataCache cache = new PersistentImageDataCache(path, 8)) {
+            for (int i = 0; i < count; i++) {
+                cache.put(FORMAT, i, new ImageData(payload(i), PAGE_SIZE));
+                ends[i] = cache.getFileSize();
+            }
+        }
+        return ends;
+    }
+
+    private static byte[] payload(int fingerprint) {
+        byte[] payload = new byte[3000 + fingerprint * 100];
+        new Random(fingerprint).nextBytes(payload);
+        return payload;
+    }
+
+    private static byte[] bytes(ImageData imageData) {
+        ByteBuffer buffer = imageData.asByteBuffer();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,68 @@
+#!/usr/bin/env python3
+"""Writes the image reports the reference driver (python-elgato-streamdeck) sends for the test image of
+KeyImageReportsTest. The transforms, the bitmap writer and the report loop follow the driver and Pillow step by
+step, without depending on either:
+
+- PILHelper.to_native_format: rotate counterclockwise by KEY_ROTATION, then flip by KEY_FLIP (left-right, top-bottom)
+- Pillow's BMP writer: 24 bit BGR rows, bottom-up, padded to four bytes, 96 DPI
+- set_key_image: pages of IMAGE_REPORT_LENGTH bytes, header plus payload, zero padded
+
+Run it in this directory to regenerate original-key0.bin and mini-key0.bin.
+"""
+import struct
+
+
+def test_pixel(x, y):
+    return ((x * 3) & 0xff, (y * 3) & 0xff, (x * y) & 0xff)
+
+
+def native_image(size, rotation, flip):
+    img = [[test_pixel(x, y) for x in range(size)] for y in range(size)]
+    if rotation == 90:
+        img = [[img[x][size - 1 - y] for x in range(size)] for y in range(size)]
+    if flip[0]:
+        img = [row[::-1] for row in img]
+    if flip[1]:
+        img = img[::-1]
+    return img
+
+
+def bmp(img):
+    height = len(img)
+    width = len(img[0])
+    stride = (width * 3 + 3) & ~3
+    pixels = bytearray()
+    for row in reversed(img):
+        for r, g, b in row:
+            pixels += bytes((b, g, r))
+        pixels += bytes(stride - width * 3)
+    ppm = int(96 * 39.3701 + 0.5)
+    header = b"BM" + struct.pack("<IIIIiiHHIIiiII", 54 + len(pixels), 0, 54, 40, width, height, 1, 24, 0,
+                                 len(pixels), ppm, ppm, 0, 0)
+    return header + pixels
+
+
+def reports(image, key, report_length, first_page):
+    payload_length = report_length - 16
+    out = bytearray()
+    page = 0
+    remaining = len(image)
+    while remaining > 0:
+        length = min(remaining, payload_length)
+        sent = page * payload_length
+        header = [0x02, 0x01, page + first_page, 0, 1 if length == remaining else 0, key + 1] + [0] * 10
+        report = bytes(header) + image[sent:sent + length]
+        out += report + bytes(report_length - len(report))
+        remaining -= length
+        page += 1
+    return out
+
+
+# Original: KEY_FLIP (True, True), no rotation, 8191 byte reports, pages counted from 1. Key 0 is the top left key,
+# which the device numbers 4 as it counts from the right.
+with open("original-key0.bin", "wb") as f:
+    f.write(reports(bmp(native_image(72, 0, (True, True))), 4, 8191, 1))
+
+# Mini: KEY_ROTATION 90, KEY_FLIP (False, True), 1024 byte reports, pages counted from 0
+with open("mini-key0.bin", "wb") as f:
+    f.write(reports(bmp(native_image(80, 90, (False, True))), 0, 1024, 0))